@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.UUID;
+
+// In-memory H2 с теми же миграциями, что и у приложения, заполняемая DatasetGenerator
+public class BenchmarkDatabase implements AutoCloseable {
+    private final EmbeddedDatabase dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BenchmarkDatabase() {
+        this("latest");
+    }
+
+    // схема до указанной версии миграций включительно, например без индексов последней
+    public BenchmarkDatabase(String schemaVersion) {
+        this.dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("bench-" + UUID.randomUUID())
+                .build();
+        Flyway.configure().dataSource(dataSource).target(schemaVersion).load().migrate();
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public void seed(int films, int users, int likes, long seed) {
+        seed(DatasetSpec.of(films, users, likes, seed));
+    }
+
+    public void seed(DatasetSpec spec) {
+        new DatasetGenerator(jdbcTemplate).generate(spec);
+    }
+
+    @Override
+    public void close() {
+        dataSource.shutdown();
+    }
+}
@@ -0,0 +1,198 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Детерминированный генератор данных: одинаковый seed даёт одинаковую базу.
+// Популярность фильмов, активность пользователей и число друзей распределены по Ципфу.
+@Slf4j
+public class DatasetGenerator {
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES = 6;
+    private static final int MPA_RATINGS = 5;
+    private static final LocalDate FIRST_RELEASE = LocalDate.of(1950, 1, 1);
+    private static final long START_TIMESTAMP = 1_600_000_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DatasetGenerator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void generate(DatasetSpec spec) {
+        long started = System.currentTimeMillis();
+        Random random = new Random(spec.seed());
+
+        insertUsers(spec, random);
+        insertDirectors(spec);
+        insertFilms(spec, random);
+
+        ZipfSampler filmPopularity = new ZipfSampler(spec.films(), spec.skew(), random);
+        ZipfSampler userActivity = new ZipfSampler(spec.users(), spec.skew(), random);
+
+        insertLikes(spec, random, filmPopularity, userActivity);
+        insertFriendships(spec, random, userActivity);
+        insertReviews(spec, random, filmPopularity, userActivity);
+
+        // счётчики AUTO_INCREMENT должны продолжать после явно вставленных id
+        restartIdentity("users", "id", spec.users());
+        restartIdentity("films", "id", spec.films());
+        restartIdentity("directors", "id", spec.directors());
+        restartIdentity("reviews", "review_id", spec.reviews());
+
+        log.info("Сгенерирован набор данных {} за {} мс", spec, System.currentTimeMillis() - started);
+    }
+
+    private void insertUsers(DatasetSpec spec, Random random) {
+        Batch batch = new Batch("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)");
+        for (int id = 1; id <= spec.users(); id++) {
+            batch.add(id, "user" + id + "@mail.ru", "user" + id, "User " + id,
+                    Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(20_000))));
+        }
+        batch.flush();
+    }
+
+    private void insertDirectors(DatasetSpec spec) {
+        Batch batch = new Batch("INSERT INTO directors (id, name) VALUES (?, ?)");
+        for (int id = 1; id <= spec.directors(); id++) {
+            batch.add(id, "Director " + id);
+        }
+        batch.flush();
+    }
+
+    private void insertFilms(DatasetSpec spec, Random random) {
+        Batch films = new Batch("INSERT INTO films (id, name, description, release_date, duration, mpa_rating_id) "
+                + "VALUES (?, ?, ?, ?, ?, ?)");
+        Batch genres = new Batch("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)");
+        Batch directors = new Batch("INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)");
+        int releaseDays = (int) (LocalDate.of(2025, 1, 1).toEpochDay() - FIRST_RELEASE.toEpochDay());
+
+        for (int id = 1; id <= spec.films(); id++) {
+            films.add(id, "Film " + id, "Description of film " + id,
+                    Date.valueOf(FIRST_RELEASE.plusDays(random.nextInt(releaseDays))),
+                    60 + random.nextInt(120), 1 + random.nextInt(MPA_RATINGS));
+        }
+        films.flush();
+
+        // 1-3 жанра и 0-2 режиссёра на фильм
+        for (int id = 1; id <= spec.films(); id++) {
+            int firstGenre = 1 + random.nextInt(GENRES);
+            int genreCount = 1 + random.nextInt(3);
+            for (int g = 0; g < genreCount; g++) {
+                genres.add(id, 1 + (firstGenre - 1 + g) % GENRES);
+            }
+            int directorCount = random.nextInt(3);
+            int firstDirector = 1 + random.nextInt(spec.directors());
+            for (int d = 0; d < directorCount && d < spec.directors(); d++) {
+                directors.add(id, 1 + (firstDirector - 1 + d) % spec.directors());
+            }
+        }
+        genres.flush();
+        directors.flush();
+    }
+
+    private void insertLikes(DatasetSpec spec, Random random, ZipfSampler films, ZipfSampler users) {
+        Batch likes = new Batch("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)");
+        Batch events = new Batch("INSERT INTO events (user_id, event_type, operation, entity_id, timestamp) "
+                + "VALUES (?, 'LIKE', 'ADD', ?, ?)");
+        int target = (int) Math.min(spec.likes(), (long) spec.films() * spec.users());
+        Set<Long> seen = new HashSet<>(target * 2);
+        long timestamp = START_TIMESTAMP;
+
+        while (seen.size() < target) {
+            int filmId = films.next(random);
+            int userId = users.next(random);
+            if (seen.add(pair(filmId, userId))) {
+                likes.add(filmId, userId);
+                events.add(userId, filmId, timestamp);
+                timestamp += 1 + random.nextInt(1000);
+            }
+        }
+        likes.flush();
+        events.flush();
+    }
+
+    private void insertFriendships(DatasetSpec spec, Random random, ZipfSampler users) {
+        Batch friendships = new Batch("INSERT INTO friendships (user_id, friend_id) VALUES (?, ?)");
+        long target = Math.min(spec.friendships(), (long) spec.users() * (spec.users() - 1));
+        Set<Long> seen = new HashSet<>((int) Math.min(Integer.MAX_VALUE / 2, target * 2));
+
+        while (seen.size() < target) {
+            // кто добавляет - равномерно, кого добавляют - "знаменитости" по Ципфу
+            int userId = 1 + random.nextInt(spec.users());
+            int friendId = users.next(random);
+            if (userId != friendId && seen.add(pair(userId, friendId))) {
+                friendships.add(userId, friendId);
+            }
+        }
+        friendships.flush();
+    }
+
+    private void insertReviews(DatasetSpec spec, Random random, ZipfSampler films, ZipfSampler users) {
+        Batch reviews = new Batch("INSERT INTO reviews (review_id, content, is_positive, user_id, film_id) "
+                + "VALUES (?, ?, ?, ?, ?)");
+        for (int id = 1; id <= spec.reviews(); id++) {
+            reviews.add(id, "Review " + id, random.nextInt(4) != 0, users.next(random), films.next(random));
+        }
+        reviews.flush();
+
+        if (spec.reviews() == 0) {
+            return;
+        }
+        ZipfSampler reviewPopularity = new ZipfSampler(spec.reviews(), spec.skew(), random);
+        Batch votes = new Batch("INSERT INTO review_likes (review_id, user_id, is_like) VALUES (?, ?, ?)");
+        long target = Math.min(spec.reviewVotes(), (long) spec.reviews() * spec.users());
+        Set<Long> seen = new HashSet<>((int) Math.min(Integer.MAX_VALUE / 2, target * 2));
+        while (seen.size() < target) {
+            int reviewId = reviewPopularity.next(random);
+            int userId = 1 + random.nextInt(spec.users());
+            if (seen.add(pair(reviewId, userId))) {
+                votes.add(reviewId, userId, random.nextInt(10) < 7);
+            }
+        }
+        votes.flush();
+
+        jdbcTemplate.update("UPDATE reviews r SET useful = "
+                + "(SELECT COALESCE(SUM(CASE WHEN rl.is_like THEN 1 ELSE -1 END), 0) "
+                + "FROM review_likes rl WHERE rl.review_id = r.review_id)");
+    }
+
+    private void restartIdentity(String table, String column, int lastId) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + (lastId + 1));
+    }
+
+    private static long pair(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    private class Batch {
+        private final String sql;
+        private final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+
+        Batch(String sql) {
+            this.sql = sql;
+        }
+
+        void add(Object... row) {
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+                rows.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+// Размеры синтетического набора данных. skew - показатель степени распределения Ципфа
+public record DatasetSpec(int users,
+                          int films,
+                          int likes,
+                          int friendships,
+                          int directors,
+                          int reviews,
+                          int reviewVotes,
+                          double skew,
+                          long seed) {
+
+    public static DatasetSpec of(int films, int users, int likes, long seed) {
+        return new DatasetSpec(users, films, likes,
+                users * 20,
+                Math.max(10, films / 20),
+                films / 2,
+                films * 2,
+                1.0,
+                seed);
+    }
+
+    public static DatasetSpec fromSystemProperties(String prefix) {
+        int films = Integer.getInteger(prefix + ".films", 10_000);
+        int users = Integer.getInteger(prefix + ".users", 10_000);
+        int likes = Integer.getInteger(prefix + ".likes", 100_000);
+        long seed = Long.getLong(prefix + ".seed", 42L);
+        DatasetSpec defaults = of(films, users, likes, seed);
+        return new DatasetSpec(users, films, likes,
+                Integer.getInteger(prefix + ".friendships", defaults.friendships()),
+                Integer.getInteger(prefix + ".directors", defaults.directors()),
+                Integer.getInteger(prefix + ".reviews", defaults.reviews()),
+                Integer.getInteger(prefix + ".reviewVotes", defaults.reviewVotes()),
+                Double.parseDouble(System.getProperty(prefix + ".skew", String.valueOf(defaults.skew()))),
+                seed);
+    }
+}
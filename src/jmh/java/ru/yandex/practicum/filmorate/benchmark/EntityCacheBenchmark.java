@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.WriteBehind;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PendingLikes;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Чтение фильма и пользователя по id при ципфовском распределении запросов: без кэша,
+// с кэшем, куда помещается часть каталога, и с кэшем на весь каталог.
+// maxWeight 0 - выключены и кэш, и карты существующих id
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityCacheBenchmark {
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    @Param({"1.0"})
+    private double skew;
+
+    @Param({"0", "20000", "200000"})
+    private long maxWeight;
+
+    private BenchmarkDatabase database;
+    private EntityCaches caches;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private ZipfSampler filmIds;
+    private ZipfSampler userIds;
+    private int[] deletedFilmIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, users, likes, seed);
+        caches = new EntityCaches(database.getJdbcTemplate(), maxWeight > 0, maxWeight, maxWeight, maxWeight > 0);
+        CatalogVersions versions = new CatalogVersions();
+        filmStorage = new FilmDbStorage(database.getJdbcTemplate(), HydrationExecutor.sequential(), versions,
+                PopularityIndex.disabled(), TrendingIndex.detached(), PendingLikes.disabled(), caches);
+        userStorage = new UserDbStorage(database.getJdbcTemplate(), HydrationExecutor.sequential(), versions,
+                PopularityIndex.disabled(), TrendingIndex.detached(), WriteBehind.disabled(),
+                PendingLikes.disabled(), caches);
+        deletedFilmIds = deleteExtraFilms(1_000);
+        Random random = new Random(seed);
+        filmIds = new ZipfSampler(films, skew, random);
+        userIds = new ZipfSampler(users, skew, random);
+    }
+
+    // фильмы сверх каталога, удалённые через хранилище уже после загрузки карты id
+    private int[] deleteExtraFilms(int count) {
+        for (int i = 0; i < count; i++) {
+            database.getJdbcTemplate().update("INSERT INTO films (name, description, release_date, duration, "
+                    + "mpa_rating_id) VALUES (?, ?, DATE '2000-01-01', 100, 1)", "Deleted " + i, "description");
+        }
+        int[] ids = database.getJdbcTemplate().queryForList("SELECT id FROM films WHERE id > ?", Integer.class,
+                films).stream().mapToInt(Integer::intValue).toArray();
+        caches.filmIds().mightExist(1);
+        for (int id : ids) {
+            filmStorage.deleteFilm(id);
+        }
+        return ids;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        caches.stats().forEach(stats -> System.out.println(stats));
+        database.close();
+    }
+
+    @Benchmark
+    public Film filmById() {
+        return filmStorage.getFilmById(filmIds.next(ThreadLocalRandom.current()));
+    }
+
+    // проверка существования перед лайком
+    @Benchmark
+    public Film filmExists() {
+        return filmStorage.getFilmById(filmIds.next(ThreadLocalRandom.current()), FilmFields.NONE);
+    }
+
+    // id удалённых фильмов: так ходят сканеры и сломанные клиенты. id больше наибольшего известного
+    // карта не отсекает, поэтому берутся дыры внутри диапазона
+    @Benchmark
+    public Film unknownFilm() {
+        return filmStorage.getFilmById(deletedFilmIds[ThreadLocalRandom.current().nextInt(deletedFilmIds.length)]);
+    }
+
+    @Benchmark
+    public User userById() {
+        return userStorage.getUserById(userIds.next(ThreadLocalRandom.current()));
+    }
+}
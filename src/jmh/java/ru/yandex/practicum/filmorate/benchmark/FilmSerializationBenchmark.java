@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.serialization.FilmJsonWriter;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Сериализация всего каталога: List<Film> через ObjectMapper против потоковой записи FilmJsonWriter.
+// Время включает чтение из H2, чтобы учитывать и выделение памяти под коллекции фильмов.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmSerializationBenchmark {
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, users, likes, seed);
+        filmStorage = new FilmDbStorage(database.getJdbcTemplate());
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public int objectMapperList() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        objectMapper.writeValue(out, filmStorage.getAllFilms());
+        return out.size();
+    }
+
+    @Benchmark
+    public int streamingWriter() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartArray();
+        filmStorage.streamAllFilms(new FilmJsonWriter(generator));
+        generator.writeEndArray();
+        generator.close();
+        return out.size();
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmStorageBenchmark {
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    @Param({"false", "true"})
+    private boolean parallelHydration;
+
+    @Param({"false", "true"})
+    private boolean popularityIndex;
+
+    private BenchmarkDatabase database;
+    private HydrationExecutor hydration;
+    private PopularityIndex popularity;
+    private FilmDbStorage filmStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, users, likes, seed);
+        hydration = parallelHydration ? HydrationExecutor.parallel() : HydrationExecutor.sequential();
+        popularity = popularityIndex ? new PopularityIndex(database.getJdbcTemplate(), true) : PopularityIndex.disabled();
+        popularity.rebuild();
+        filmStorage = new FilmDbStorage(database.getJdbcTemplate(), hydration, new CatalogVersions(), popularity,
+                TrendingIndex.detached());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hydration.shutdown();
+        popularity.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> popularFilms() {
+        return filmStorage.getPopularFilms(10, null, null);
+    }
+
+    @Benchmark
+    public List<Film> popularFilmsByGenreAndYear() {
+        return filmStorage.getPopularFilms(10, 1, 2000);
+    }
+
+    // весь каталог потоком: все связи против ?view=summary (только жанры)
+    @Benchmark
+    public void allFilms(Blackhole blackhole) {
+        filmStorage.streamAllFilms(FilmFields.FULL, (id, name, description, releaseDate, duration, mpa,
+                                                      genres, filmLikes, directors) -> blackhole.consume(filmLikes));
+    }
+
+    @Benchmark
+    public void allFilmsSummary(Blackhole blackhole) {
+        filmStorage.streamAllFilms(FilmFields.SUMMARY, (id, name, description, releaseDate, duration, mpa,
+                                                         genres, filmLikes, directors) -> blackhole.consume(genres));
+    }
+
+    @Benchmark
+    public List<Film> filmsByFilter() {
+        return filmStorage.getFilmsByFilter("12", List.of("title", "director"));
+    }
+
+    @Benchmark
+    public List<Film> recommendedFilms() {
+        return filmStorage.getRecommendedFilms(randomUser());
+    }
+
+    @Benchmark
+    public List<Film> commonFilms() {
+        return filmStorage.getCommonFilms(randomUser(), randomUser());
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
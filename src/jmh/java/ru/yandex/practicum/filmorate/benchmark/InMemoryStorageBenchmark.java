@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// getFilmsByFilter в InMemoryFilmStorage не реализован, поэтому здесь его нет
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InMemoryStorageBenchmark {
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    private InMemoryFilmStorage filmStorage;
+    private InMemoryUserStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(seed);
+        filmStorage = new InMemoryFilmStorage();
+        userStorage = new InMemoryUserStorage();
+
+        for (int i = 1; i <= users; i++) {
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setName("User " + i);
+            user.setBirthday(LocalDate.of(1970, 1, 1).plusDays(i % 15000));
+            userStorage.addUser(user);
+        }
+        for (int i = 1; i <= films; i++) {
+            Film film = new Film();
+            film.setName("Film " + i);
+            film.setDescription("Description " + i);
+            film.setReleaseDate(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27000)));
+            film.setDuration(60 + random.nextInt(120));
+            Mpa mpa = new Mpa();
+            mpa.setId(1 + random.nextInt(5));
+            film.setMpa(mpa);
+            filmStorage.addFilm(film);
+        }
+        for (int i = 0; i < likes; i++) {
+            filmStorage.addLike(1 + random.nextInt(films), 1 + random.nextInt(users));
+        }
+        for (int i = 1; i <= users; i++) {
+            for (int j = 0; j < 20; j++) {
+                userStorage.addFriend(i, 1 + random.nextInt(users));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Film> popularFilms() {
+        return filmStorage.getPopularFilms(10, null, null);
+    }
+
+    @Benchmark
+    public List<Film> recommendedFilms() {
+        return filmStorage.getRecommendedFilms(randomUser());
+    }
+
+    @Benchmark
+    public List<Film> commonFilms() {
+        return filmStorage.getCommonFilms(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<User> commonFriends() {
+        return userStorage.getCommonFriends(randomUser(), randomUser());
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,152 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Методы хранилищ, которых касаются индексы миграции V4: схема до V3 (без индексов) и полная.
+// Индексы популярности и режиссёров в памяти выключены, чтобы измерялись сами запросы.
+// Планы запросов (EXPLAIN) печатаются в начале каждого прогона.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+    private static final String[] PLANNED_QUERIES = {
+            "SELECT COUNT(*) FROM film_likes WHERE user_id = 1",
+            "SELECT film_id FROM film_likes WHERE user_id = 1",
+            "DELETE FROM friendships WHERE friend_id = 1",
+            "SELECT f.id FROM films f JOIN film_directors fd ON fd.film_id = f.id WHERE fd.director_id = 1",
+            "SELECT * FROM reviews WHERE film_id = 1 ORDER BY useful DESC LIMIT 10",
+            "SELECT film_id FROM film_likes WHERE user_id = 1 "
+                    + "AND film_id IN (SELECT film_id FROM film_likes WHERE user_id = 2)",
+            "SELECT id FROM films WHERE release_date >= DATE '2000-01-01' AND release_date < DATE '2001-01-01'"
+    };
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    @Param({"3", "latest"})
+    private String schema;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private ReviewDbStorage reviewStorage;
+    private int directors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase(schema);
+        database.seed(films, users, likes, seed);
+        JdbcTemplate jdbc = database.getJdbcTemplate();
+        filmStorage = new FilmDbStorage(jdbc);
+        userStorage = new UserDbStorage(jdbc);
+        reviewStorage = new ReviewDbStorage(jdbc);
+        directors = jdbc.queryForObject("SELECT COUNT(*) FROM directors", Integer.class);
+
+        System.out.println();
+        for (String sql : PLANNED_QUERIES) {
+            System.out.println("schema=" + schema + ": " + String.join(" ",
+                    jdbc.queryForList("EXPLAIN " + sql, String.class)).replaceAll("\\s+", " "));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> recommendedFilms() {
+        return filmStorage.getRecommendedFilms(randomUser());
+    }
+
+    @Benchmark
+    public List<Film> commonFilms() {
+        return filmStorage.getCommonFilms(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public void deleteUser(DoomedUser doomed) {
+        userStorage.deleteUser(doomed.id);
+    }
+
+    @Benchmark
+    public List<Film> filmsByDirector() {
+        return filmStorage.getFilmsByDirectorSorted(1 + ThreadLocalRandom.current().nextInt(directors), "likes");
+    }
+
+    @Benchmark
+    public List<Review> reviewsByFilm() {
+        return reviewStorage.getReviews((long) 1 + ThreadLocalRandom.current().nextInt(100), 10);
+    }
+
+    // фильм с наибольшим числом отзывов: фильмы отзывов выбираются по Ципфу
+    @Benchmark
+    public List<Review> reviewsOfTopFilm() {
+        return reviewStorage.getReviews(1L, 10);
+    }
+
+    @Benchmark
+    public List<Film> popularFilmsByYear() {
+        return filmStorage.getPopularFilms(10, null, 2000);
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    // пользователь с лайками и друзьями в обе стороны, которого удалит deleteUser
+    @State(Scope.Thread)
+    public static class DoomedUser {
+        private int id;
+
+        @Setup(Level.Invocation)
+        public void create(IndexBenchmark benchmark) {
+            JdbcTemplate jdbc = benchmark.database.getJdbcTemplate();
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            String login = "doomed" + System.nanoTime();
+            jdbc.update(connection -> {
+                PreparedStatement stmt = connection.prepareStatement(
+                        "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)", new String[]{"id"});
+                stmt.setString(1, login + "@mail.ru");
+                stmt.setString(2, login);
+                stmt.setString(3, login);
+                stmt.setObject(4, LocalDate.of(1990, 1, 1));
+                return stmt;
+            }, keyHolder);
+            id = keyHolder.getKey().intValue();
+            for (int i = 0; i < 20; i++) {
+                int other = benchmark.randomUser();
+                jdbc.update("MERGE INTO friendships (user_id, friend_id) VALUES (?, ?)", id, other);
+                jdbc.update("MERGE INTO friendships (user_id, friend_id) VALUES (?, ?)", other, id);
+                jdbc.update("MERGE INTO film_likes (film_id, user_id) VALUES (?, ?)",
+                        1 + ThreadLocalRandom.current().nextInt(benchmark.films), id);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.event.EventDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserStorageBenchmark {
+
+    @Param({"10000"})
+    private int films;
+
+    @Param({"10000"})
+    private int users;
+
+    @Param({"100000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    @Param({"false", "true"})
+    private boolean parallelHydration;
+
+    private BenchmarkDatabase database;
+    private HydrationExecutor hydration;
+    private UserDbStorage userStorage;
+    private EventDbStorage eventStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase();
+        database.seed(films, users, likes, seed);
+        hydration = parallelHydration ? HydrationExecutor.parallel() : HydrationExecutor.sequential();
+        userStorage = new UserDbStorage(database.getJdbcTemplate(), hydration, new CatalogVersions(),
+                PopularityIndex.disabled(),
+                TrendingIndex.detached());
+        eventStorage = new EventDbStorage(database.getJdbcTemplate(), new LikeAnalytics(2048, 4, 100, 12));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hydration.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public User userById() {
+        return userStorage.getUserById(randomUser());
+    }
+
+    @Benchmark
+    public List<User> commonFriends() {
+        return userStorage.getCommonFriends(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public List<Event> userFeed() {
+        return eventStorage.getUserFeed(randomUser());
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(users);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Размер и время сериализации GET /films и GET /users в JSON, CBOR и Smile, без сжатия и с gzip.
+// Размеры ответов печатаются в лог при подготовке каждого набора параметров.
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"5000"})
+    private int films;
+
+    @Param({"5000"})
+    private int users;
+
+    @Param({"50000"})
+    private int likes;
+
+    @Param({"42"})
+    private long seed;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private ObjectMapper mapper;
+    private List<Film> filmList;
+    private List<User> userList;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkDatabase database = new BenchmarkDatabase();
+        try {
+            database.seed(films, users, likes, seed);
+            filmList = new FilmDbStorage(database.getJdbcTemplate()).getAllFilms();
+            userList = new UserDbStorage(database.getJdbcTemplate()).getAllUsers();
+        } finally {
+            database.close();
+        }
+        mapper = switch (format) {
+            case "cbor" -> new CBORMapper();
+            case "smile" -> new SmileMapper();
+            default -> new ObjectMapper();
+        };
+        mapper.registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        log.info("format={} gzip={}: /films {} байт, /users {} байт", format, gzip, films(), users());
+    }
+
+    @Benchmark
+    public int films() throws IOException {
+        return write(filmList);
+    }
+
+    @Benchmark
+    public int users() throws IOException {
+        return write(userList);
+    }
+
+    private int write(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+            mapper.writeValue(out, value);
+        }
+        return bytes.size();
+    }
+}
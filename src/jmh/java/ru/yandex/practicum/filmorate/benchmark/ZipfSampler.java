@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Выборка ранга 1..n по закону Ципфа через таблицу накопленных вероятностей.
+// Ранги перемешаны, чтобы самые "популярные" id не шли подряд с единицы.
+public class ZipfSampler {
+    private final double[] cdf;
+    private final int[] idByRank;
+
+    public ZipfSampler(int n, double skew, Random random) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int rank = 1; rank <= n; rank++) {
+            sum += 1.0 / Math.pow(rank, skew);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+
+        idByRank = new int[n];
+        for (int i = 0; i < n; i++) {
+            idByRank[i] = i + 1;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = idByRank[i];
+            idByRank[i] = idByRank[j];
+            idByRank[j] = tmp;
+        }
+    }
+
+    public int next(Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return idByRank[Math.min(index, idByRank.length - 1)];
+    }
+}
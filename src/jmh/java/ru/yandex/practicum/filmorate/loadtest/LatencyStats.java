@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.util.Arrays;
+
+// Накопитель задержек одного эндпоинта. Не потокобезопасен: у каждого воркера свой экземпляр
+class LatencyStats {
+    private long[] nanos = new long[1024];
+    private int size;
+    private int errors;
+
+    void record(long latencyNanos, boolean success) {
+        if (size == nanos.length) {
+            nanos = Arrays.copyOf(nanos, size * 2);
+        }
+        nanos[size++] = latencyNanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    void merge(LatencyStats other) {
+        if (size + other.size > nanos.length) {
+            nanos = Arrays.copyOf(nanos, size + other.size);
+        }
+        System.arraycopy(other.nanos, 0, nanos, size, other.size);
+        size += other.size;
+        errors += other.errors;
+    }
+
+    int count() {
+        return size;
+    }
+
+    int errors() {
+        return errors;
+    }
+
+    // перцентиль в миллисекундах, массив сортируется на месте
+    double percentileMillis(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        Arrays.sort(nanos, 0, size);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return nanos[Math.max(0, Math.min(index, size - 1))] / 1_000_000.0;
+    }
+}
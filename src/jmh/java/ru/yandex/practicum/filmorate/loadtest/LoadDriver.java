@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Закрытая модель нагрузки: concurrency воркеров шлют запросы друг за другом без пауз
+public class LoadDriver {
+    private final String baseUrl;
+    private final int concurrency;
+    private final int films;
+    private final int users;
+    private final long seed;
+    private final List<Workload> workloads;
+    private final HttpClient client;
+
+    public LoadDriver(String baseUrl, int concurrency, int films, int users, long seed, List<Workload> workloads) {
+        this.baseUrl = baseUrl;
+        this.concurrency = concurrency;
+        this.films = films;
+        this.users = users;
+        this.seed = seed;
+        this.workloads = workloads;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public LoadReport run(Duration warmup, Duration duration) throws Exception {
+        // клиенты на виртуальных потоках, чтобы тысячи одновременных запросов не упирались в сам драйвер
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            long warmupEnd = System.nanoTime() + warmup.toNanos();
+            long end = warmupEnd + duration.toNanos();
+
+            List<Future<Map<Workload, LatencyStats>>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                Random random = new Random(seed + i);
+                futures.add(executor.submit(() -> work(random, warmupEnd, end)));
+            }
+
+            Map<Workload, LatencyStats> total = new EnumMap<>(Workload.class);
+            for (Future<Map<Workload, LatencyStats>> future : futures) {
+                future.get().forEach((workload, stats) ->
+                        total.computeIfAbsent(workload, w -> new LatencyStats()).merge(stats));
+            }
+            return new LoadReport(total, duration, concurrency);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<Workload, LatencyStats> work(Random random, long warmupEnd, long end) {
+        Map<Workload, LatencyStats> stats = new EnumMap<>(Workload.class);
+        long now = System.nanoTime();
+        while (now < end) {
+            Workload workload = Workload.pick(random, workloads);
+            long started = System.nanoTime();
+            boolean success;
+            try {
+                HttpResponse<Void> response = client.send(workload.request(baseUrl, random, films, users),
+                        HttpResponse.BodyHandlers.discarding());
+                success = response.statusCode() < 500;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                success = false;
+            }
+            now = System.nanoTime();
+            if (started >= warmupEnd) {
+                stats.computeIfAbsent(workload, w -> new LatencyStats()).record(now - started, success);
+            }
+        }
+        return stats;
+    }
+}
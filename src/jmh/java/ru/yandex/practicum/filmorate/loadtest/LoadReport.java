@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Итоги прогона: пропускная способность и перцентили задержки по каждому эндпоинту
+public class LoadReport {
+    private final Map<String, Map<String, Object>> endpoints = new LinkedHashMap<>();
+    private final double totalThroughput;
+
+    LoadReport(Map<Workload, LatencyStats> stats, Duration duration, int concurrency) {
+        double seconds = duration.toMillis() / 1000.0;
+        int total = 0;
+        for (Map.Entry<Workload, LatencyStats> entry : stats.entrySet()) {
+            LatencyStats s = entry.getValue();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("requests", s.count());
+            row.put("errors", s.errors());
+            row.put("throughput", s.count() / seconds);
+            row.put("p50", s.percentileMillis(50));
+            row.put("p99", s.percentileMillis(99));
+            row.put("p999", s.percentileMillis(99.9));
+            endpoints.put(entry.getKey().name(), row);
+            total += s.count();
+        }
+        this.totalThroughput = total / seconds;
+    }
+
+    public Map<String, Map<String, Object>> getEndpoints() {
+        return endpoints;
+    }
+
+    public double getTotalThroughput() {
+        return totalThroughput;
+    }
+
+    public String toTable() {
+        StringBuilder sb = new StringBuilder(String.format("%-16s %9s %7s %10s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms"));
+        endpoints.forEach((name, row) -> sb.append(String.format("%-16s %9d %7d %10.1f %9.2f %9.2f %9.2f%n",
+                name, row.get("requests"), row.get("errors"), row.get("throughput"),
+                row.get("p50"), row.get("p99"), row.get("p999"))));
+        sb.append(String.format("total throughput: %.1f req/s%n", totalThroughput));
+        return sb.toString();
+    }
+}
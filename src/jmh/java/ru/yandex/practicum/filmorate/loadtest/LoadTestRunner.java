@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.benchmark.DatasetGenerator;
+import ru.yandex.practicum.filmorate.benchmark.DatasetSpec;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Поднимает приложение на случайном порту поверх in-memory H2, заполняет её генератором
+// и гоняет смешанную нагрузку. Аргументы командной строки передаются в Spring как есть.
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        DatasetSpec spec = DatasetSpec.fromSystemProperties("load");
+        LoadReport report = run(spec, args);
+
+        System.out.print(report.toTable());
+        save(report);
+    }
+
+    static LoadReport run(DatasetSpec spec, String... args) throws Exception {
+        int concurrency = Integer.getInteger("load.concurrency", 32);
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 10L));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 30L));
+        List<Workload> workloads = Workload.parse(System.getProperty("load.workload"));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .run(withDefaults(args));
+        try {
+            new DatasetGenerator(context.getBean(JdbcTemplate.class)).generate(spec);
+            // данные залиты в обход хранилищ: индексы популярности и трендов собираем заново, карты id перечитываем
+            context.getBean(PopularityIndex.class).rebuild();
+            context.getBean(TrendingIndex.class).reload();
+            context.getBean(EntityCaches.class).filmIds().reset();
+            context.getBean(EntityCaches.class).userIds().reset();
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadDriver driver = new LoadDriver("http://localhost:" + port, concurrency,
+                    spec.films(), spec.users(), spec.seed(), workloads);
+            return driver.run(warmup, duration);
+        } finally {
+            context.close();
+        }
+    }
+
+    // Перекрывает application.properties, но не явно переданные аргументы
+    private static String[] withDefaults(String[] args) {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("server.port", "0");
+        defaults.put("spring.datasource.url", "jdbc:h2:mem:loadtest-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        defaults.put("spring.h2.console.enabled", "false");
+        defaults.put("logging.level.org.zalando.logbook", "WARN");
+        defaults.put("logging.level.ru.yandex.practicum.filmorate", "WARN");
+
+        List<String> result = new ArrayList<>();
+        defaults.forEach((key, value) -> {
+            boolean overridden = Arrays.stream(args).anyMatch(arg -> arg.startsWith("--" + key + "="));
+            if (!overridden) {
+                result.add("--" + key + "=" + value);
+            }
+        });
+        result.addAll(Arrays.asList(args));
+        return result.toArray(new String[0]);
+    }
+
+    static void save(Object report) throws Exception {
+        File result = new File(System.getProperty("load.result", "target/load-test-result.json"));
+        result.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(result, report);
+        System.out.println("Result saved to " + result.getAbsolutePath());
+    }
+}
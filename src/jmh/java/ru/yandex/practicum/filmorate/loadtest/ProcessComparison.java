@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.yandex.practicum.filmorate.benchmark.DatasetGenerator;
+import ru.yandex.practicum.filmorate.benchmark.DatasetSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Сборки приложения (jar на JVM, native-образ и т.п.) как отдельные процессы на одной и той же
+// файловой H2: время до первого ответа, RSS после старта, пиковый RSS и пропускная способность.
+// Цели: -Dcompare.targets="jvm=java -jar target/filmorate-0.0.1-SNAPSHOT.jar;native=target/filmorate",
+// команда выполняется через sh -c, порт и адрес базы дописываются к ней аргументами.
+public class ProcessComparison {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+    private static final String DB_USER = "sa";
+    private static final String DB_PASSWORD = "compare";
+
+    public static void main(String[] args) throws Exception {
+        String targets = System.getProperty("compare.targets");
+        if (targets == null || targets.isBlank()) {
+            throw new IllegalArgumentException("compare.targets не задан: имя=команда;имя=команда");
+        }
+        DatasetSpec spec = DatasetSpec.fromSystemProperties("load");
+        int concurrency = Integer.getInteger("load.concurrency", 32);
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 10L));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 30L));
+        List<Workload> workloads = Workload.parse(System.getProperty("load.workload"));
+        String extraArgs = String.join(" ", args);
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        Path work = Files.createTempDirectory("filmorate-compare");
+        for (String target : targets.split(";")) {
+            String[] nameAndCommand = target.split("=", 2);
+            String name = nameAndCommand[0].trim();
+            // каждой цели своя копия базы с одинаковыми данными
+            String dbUrl = "jdbc:h2:file:" + work.resolve(name).toAbsolutePath();
+            seed(dbUrl, spec);
+
+            int port = freePort();
+            String command = nameAndCommand[1].trim() + " --server.port=" + port
+                    + " --spring.datasource.url=" + dbUrl + " --spring.datasource.username=" + DB_USER
+                    + " --spring.datasource.password=" + DB_PASSWORD + " " + extraArgs;
+            File log = new File("target/compare-" + name + ".log");
+            log.getAbsoluteFile().getParentFile().mkdirs();
+            System.out.println("== " + name + ": " + command);
+
+            long started = System.nanoTime();
+            Process process = new ProcessBuilder("sh", "-c", command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log)
+                    .start();
+            try {
+                String baseUrl = "http://localhost:" + port;
+                long startupMillis = awaitReady(process, baseUrl, started);
+                long startupRss = rssKb(process, "VmRSS");
+                LoadReport load = new LoadDriver(baseUrl, concurrency, spec.films(), spec.users(), spec.seed(),
+                        workloads).run(warmup, duration);
+                results.put(name, new Result(startupMillis, startupRss, rssKb(process, "VmHWM"), load));
+            } finally {
+                process.descendants().forEach(ProcessHandle::destroy);
+                process.destroy();
+                process.waitFor();
+            }
+        }
+
+        System.out.printf("%-12s %12s %14s %14s %12s%n", "target", "startup ms", "RSS start MB", "RSS peak MB",
+                "req/s");
+        results.forEach((name, result) -> System.out.printf("%-12s %12d %14.1f %14.1f %12.1f%n", name,
+                result.startupMillis(), result.startupRssKb() / 1024.0, result.peakRssKb() / 1024.0,
+                result.load().getTotalThroughput()));
+        results.forEach((name, result) -> {
+            System.out.println("== " + name);
+            System.out.print(result.load().toTable());
+        });
+        LoadTestRunner.save(results);
+    }
+
+    private static void seed(String dbUrl, DatasetSpec spec) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(dbUrl, DB_USER, DB_PASSWORD);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        new DatasetGenerator(new JdbcTemplate(dataSource)).generate(spec);
+    }
+
+    // время от запуска процесса до первого успешного ответа, включая старт JVM и сборку индексов
+    private static long awaitReady(Process process, String baseUrl, long started) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/genres")).build();
+        long deadline = started + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Процесс завершился с кодом " + process.exitValue());
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return (System.nanoTime() - started) / 1_000_000;
+                }
+            } catch (IOException e) {
+                // порт ещё не слушается
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Приложение не ответило за " + STARTUP_TIMEOUT);
+    }
+
+    // сумма по процессу и его потомкам из /proc (только Linux), -1 если недоступно
+    private static long rssKb(Process process, String field) {
+        List<ProcessHandle> handles = new ArrayList<>();
+        handles.add(process.toHandle());
+        process.descendants().forEach(handles::add);
+        long total = 0;
+        for (ProcessHandle handle : handles) {
+            try {
+                for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(handle.pid()), "status"))) {
+                    if (line.startsWith(field + ":")) {
+                        total += Long.parseLong(line.replaceAll("\\D", ""));
+                    }
+                }
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+        return total;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    public record Result(long startupMillis, long startupRssKb, long peakRssKb, LoadReport load) {
+    }
+}
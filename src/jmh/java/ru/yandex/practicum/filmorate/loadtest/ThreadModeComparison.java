@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import ru.yandex.practicum.filmorate.benchmark.DatasetSpec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Один и тот же набор данных и нагрузка на пуле потоков Tomcat и на виртуальных потоках.
+// По умолчанию нагрузка - только блокирующие запись/чтение (LIKE, FEED) при числе клиентов
+// больше, чем потоков Tomcat.
+public class ThreadModeComparison {
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("load.workload") == null) {
+            System.setProperty("load.workload", "LIKE,FEED");
+        }
+        if (System.getProperty("load.concurrency") == null) {
+            System.setProperty("load.concurrency", "400");
+        }
+        DatasetSpec spec = DatasetSpec.fromSystemProperties("load");
+
+        Map<String, LoadReport> reports = new LinkedHashMap<>();
+        reports.put("platform", LoadTestRunner.run(spec, concat(args, "--spring.threads.virtual.enabled=false")));
+        reports.put("virtual", LoadTestRunner.run(spec, concat(args, "--spring.threads.virtual.enabled=true")));
+
+        reports.forEach((mode, report) -> {
+            System.out.println("== " + mode);
+            System.out.print(report.toTable());
+        });
+        LoadTestRunner.save(reports);
+    }
+
+    private static String[] concat(String[] args, String extra) {
+        String[] result = new String[args.length + 1];
+        System.arraycopy(args, 0, result, 0, args.length);
+        result[args.length] = extra;
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Смешанная нагрузка: вес операции определяет долю запросов этого типа
+enum Workload {
+    POPULAR(30) {
+        @Override
+        HttpRequest request(String baseUrl, Random random, int films, int users) {
+            String query = random.nextInt(4) == 0
+                    ? "?count=10&genreId=" + (1 + random.nextInt(6)) + "&year=" + (1950 + random.nextInt(75))
+                    : "?count=10";
+            return get(baseUrl + "/films/popular" + query);
+        }
+    },
+    SEARCH(15) {
+        @Override
+        HttpRequest request(String baseUrl, Random random, int films, int users) {
+            return get(baseUrl + "/films/search?query=" + (1 + random.nextInt(999)) + "&by=title,director");
+        }
+    },
+    LIKE(20) {
+        @Override
+        HttpRequest request(String baseUrl, Random random, int films, int users) {
+            String uri = baseUrl + "/films/" + (1 + random.nextInt(films)) + "/like/" + (1 + random.nextInt(users));
+            return HttpRequest.newBuilder(URI.create(uri)).PUT(HttpRequest.BodyPublishers.noBody()).build();
+        }
+    },
+    FEED(20) {
+        @Override
+        HttpRequest request(String baseUrl, Random random, int films, int users) {
+            return get(baseUrl + "/users/" + (1 + random.nextInt(users)) + "/feed");
+        }
+    },
+    RECOMMENDATIONS(15) {
+        @Override
+        HttpRequest request(String baseUrl, Random random, int films, int users) {
+            return get(baseUrl + "/users/" + (1 + random.nextInt(users)) + "/recommendations");
+        }
+    };
+
+    private final int weight;
+
+    Workload(int weight) {
+        this.weight = weight;
+    }
+
+    abstract HttpRequest request(String baseUrl, Random random, int films, int users);
+
+    static Workload pick(Random random, List<Workload> workloads) {
+        int point = random.nextInt(workloads.stream().mapToInt(w -> w.weight).sum());
+        for (Workload workload : workloads) {
+            point -= workload.weight;
+            if (point < 0) {
+                return workload;
+            }
+        }
+        return workloads.get(0);
+    }
+
+    // список через запятую, например "LIKE,FEED"; пустая строка - все операции
+    static List<Workload> parse(String names) {
+        if (names == null || names.isBlank()) {
+            return List.of(values());
+        }
+        return Arrays.stream(names.split(","))
+                .map(String::trim)
+                .map(String::toUpperCase)
+                .map(Workload::valueOf)
+                .toList();
+    }
+
+    private static HttpRequest get(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+    }
+}
@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.cache.KnownIds;
+import ru.yandex.practicum.filmorate.cache.SingleFlight;
+import ru.yandex.practicum.filmorate.limit.AdaptiveLimit;
+import ru.yandex.practicum.filmorate.limit.QueryDeadlines;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+// Подсказки для native-image: то, что AOT-обработка контекста не находит сама.
+// Row mapper-ы — лямбды над ResultSet без рефлексии, для них подсказки не нужны.
+public class FilmorateRuntimeHints implements RuntimeHintsRegistrar {
+    // реализации, которые Logbook находит через ServiceLoader
+    static final String[] LOGBOOK_SERVICES = {
+            "org.zalando.logbook.core.DefaultLogbookFactory",
+            "org.zalando.logbook.json.CompactingJsonBodyFilter",
+            "org.zalando.logbook.json.AccessTokenBodyFilter"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // модели Lombok: геттеры и сеттеры для Jackson и валидации; фильмы пишутся потоком
+        // через FilmJsonWriter, и по сигнатурам контроллеров AOT их не находит
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                Film.class, User.class, Genre.class, Mpa.class, Director.class, Review.class,
+                Event.class, EventType.class, Operation.class,
+                LikeAnalytics.FilmLikes.class, LikeAnalytics.TopFilms.class,
+                LikeAnalytics.TopFilm.class, LikeAnalytics.ActiveUsers.class);
+        // счётчики кэшей и лимитов отдаются внутри Map<String, Object>, их тип из сигнатуры не виден
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                SingleFlight.Stats.class, EntityCache.Stats.class, KnownIds.Stats.class,
+                AdaptiveLimit.Stats.class, QueryDeadlines.Stats.class);
+
+        // прокси соединений и операторов трассировки SQL
+        hints.proxies().registerJdkProxy(Connection.class);
+        hints.proxies().registerJdkProxy(Statement.class);
+        hints.proxies().registerJdkProxy(PreparedStatement.class);
+        hints.proxies().registerJdkProxy(CallableStatement.class);
+        hints.proxies().registerJdkProxy(ResultSet.class);
+
+        // миграции Flyway ищутся по шаблону имён, а не через ClassLoader.getResource
+        hints.resources().registerPattern("db/migration/*.sql");
+
+        for (String service : LOGBOOK_SERVICES) {
+            hints.reflection().registerType(TypeReference.of(service), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+        hints.resources().registerPattern("META-INF/services/org.zalando.logbook.*");
+    }
+}
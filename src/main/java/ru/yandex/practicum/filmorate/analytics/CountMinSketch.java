@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Count-Min: depth строк по width счётчиков, у каждой строки своя попарно независимая хеш-функция.
+// Оценка — минимум по строкам, она не меньше истинного значения и с вероятностью 1 - e^-depth
+// превышает его не больше чем на e / width * N, где N — сумма всех добавлений.
+// Счётчики атомарные, обновления идут без блокировок.
+public class CountMinSketch {
+    private static final long PRIME = (1L << 31) - 1;
+
+    private final int width;
+    private final int depth;
+    private final long[] a;
+    private final long[] b;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.a = new long[depth];
+        this.b = new long[depth];
+        // фиксированные коэффициенты, чтобы скетчи разных интервалов можно было складывать
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < depth; i++) {
+            seed = Hashing.mix64(seed + i);
+            a[i] = 1 + Math.floorMod(seed, PRIME - 1);
+            seed = Hashing.mix64(seed);
+            b[i] = Math.floorMod(seed, PRIME);
+        }
+        this.counters = new AtomicLongArray(width * depth);
+    }
+
+    public void add(long item, long count) {
+        for (int row = 0; row < depth; row++) {
+            counters.addAndGet(row * width + bucket(row, item), count);
+        }
+    }
+
+    public long estimate(long item) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.get(row * width + bucket(row, item)));
+        }
+        return Math.max(0, min);
+    }
+
+    // сумма скетчей тех же размеров — скетч объединённого потока
+    public void addAll(CountMinSketch other) {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.addAndGet(i, other.counters.get(i));
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public double epsilon() {
+        return Math.E / width;
+    }
+
+    public double delta() {
+        return Math.exp(-depth);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private int bucket(int row, long item) {
+        long hash = (a[row] * Math.floorMod(item, PRIME) + b[row]) % PRIME;
+        return (int) (hash % width);
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+final class Hashing {
+    private Hashing() {
+    }
+
+    // финализатор SplitMix64: хорошо перемешивает соседние id
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
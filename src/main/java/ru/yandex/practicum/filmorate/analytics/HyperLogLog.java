@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// HyperLogLog с 2^precision регистрами: оценка числа различных элементов
+// с относительной стандартной ошибкой 1.04 / sqrt(2^precision). Удаление не поддерживается.
+public class HyperLogLog {
+    private final int precision;
+    private final int registerCount;
+    private final AtomicIntegerArray registers;
+
+    public HyperLogLog(int precision) {
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new AtomicIntegerArray(registerCount);
+    }
+
+    public void add(long item) {
+        long hash = Hashing.mix64(item);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        while (true) {
+            int current = registers.get(index);
+            if (current >= rank || registers.compareAndSet(index, current, rank)) {
+                return;
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < registerCount; i++) {
+            int value = registers.get(i);
+            sum += 1.0 / (1L << value);
+            if (value == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / registerCount);
+        double estimate = alpha * registerCount * registerCount / sum;
+        // на малых значениях точнее линейный счёт по пустым регистрам
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void addAll(HyperLogLog other) {
+        for (int i = 0; i < registerCount; i++) {
+            int theirs = other.registers.get(i);
+            while (true) {
+                int mine = registers.get(i);
+                if (mine >= theirs || registers.compareAndSet(i, mine, theirs)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < registerCount; i++) {
+            registers.set(i, 0);
+        }
+    }
+
+    public double relativeStandardError() {
+        return 1.04 / Math.sqrt(registerCount);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+}
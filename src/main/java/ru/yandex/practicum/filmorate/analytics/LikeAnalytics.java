@@ -0,0 +1,224 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Приближённая аналитика лайков в фиксированной памяти. Окно «час» — 12 интервалов по 5 минут,
+// «день» — 24 интервала по часу; интервалы переиспользуются по кругу. В каждом интервале
+// Count-Min (лайки по фильмам), Space-Saving (самые лайкаемые фильмы) и HyperLogLog
+// (различные лайкавшие и различные активные пользователи). Запрос складывает интервалы окна.
+@Component
+public class LikeAnalytics {
+    private final Clock clock;
+    private final int cmsWidth;
+    private final int cmsDepth;
+    private final int heavyHitters;
+    private final int hllPrecision;
+    private final Map<Window, Slot[]> slots = new EnumMap<>(Window.class);
+
+    @Autowired
+    public LikeAnalytics(@Value("${filmorate.analytics.cms-width:2048}") int cmsWidth,
+                         @Value("${filmorate.analytics.cms-depth:4}") int cmsDepth,
+                         @Value("${filmorate.analytics.heavy-hitters:100}") int heavyHitters,
+                         @Value("${filmorate.analytics.hll-precision:12}") int hllPrecision) {
+        this(cmsWidth, cmsDepth, heavyHitters, hllPrecision, Clock.systemUTC());
+    }
+
+    public LikeAnalytics(int cmsWidth, int cmsDepth, int heavyHitters, int hllPrecision, Clock clock) {
+        this.clock = clock;
+        this.cmsWidth = cmsWidth;
+        this.cmsDepth = cmsDepth;
+        this.heavyHitters = heavyHitters;
+        this.hllPrecision = hllPrecision;
+        for (Window window : Window.values()) {
+            Slot[] ring = new Slot[window.slots];
+            for (int i = 0; i < ring.length; i++) {
+                ring[i] = newSlot();
+            }
+            slots.put(window, ring);
+        }
+    }
+
+    public void likeAdded(int filmId, int userId) {
+        for (Window window : Window.values()) {
+            update(window, slot -> {
+                slot.likes.add(filmId, 1);
+                slot.topFilms.add(filmId, 1);
+                slot.likers.add(userId);
+                slot.total.incrementAndGet();
+            });
+        }
+    }
+
+    public void likeRemoved(int filmId, int userId) {
+        for (Window window : Window.values()) {
+            update(window, slot -> {
+                slot.likes.add(filmId, -1);
+                slot.topFilms.remove(filmId);
+                slot.total.decrementAndGet();
+            });
+        }
+    }
+
+    public void eventRecorded(int userId) {
+        for (Window window : Window.values()) {
+            update(window, slot -> slot.activeUsers.add(userId));
+        }
+    }
+
+    public FilmLikes filmLikes(int filmId, Window window) {
+        Slot merged = merge(window);
+        long total = Math.max(0, merged.total.get());
+        return new FilmLikes(filmId, window.label(), merged.likes.estimate(filmId), total,
+                (long) Math.ceil(merged.likes.epsilon() * total), 1 - merged.likes.delta());
+    }
+
+    public TopFilms topFilms(Window window, int count) {
+        Slot merged = merge(window);
+        List<TopFilm> films = merged.topFilms.top(count).stream()
+                .map(hitter -> new TopFilm((int) hitter.item(), hitter.count(), hitter.count() - hitter.error()))
+                .toList();
+        long total = Math.max(0, merged.total.get());
+        return new TopFilms(window.label(), total, (long) Math.ceil((double) total / heavyHitters), films);
+    }
+
+    public ActiveUsers activeUsers(Window window) {
+        Slot merged = merge(window);
+        return new ActiveUsers(window.label(), merged.likers.estimate(), merged.activeUsers.estimate(),
+                merged.likers.relativeStandardError());
+    }
+
+    private void update(Window window, Consumer<Slot> change) {
+        long epoch = clock.millis() / window.slotMillis();
+        Slot slot = slots.get(window)[(int) (epoch % window.slots)];
+        while (true) {
+            slot.lock.readLock().lock();
+            try {
+                if (slot.epoch == epoch) {
+                    change.accept(slot);
+                    return;
+                }
+            } finally {
+                slot.lock.readLock().unlock();
+            }
+            rotate(slot, epoch);
+        }
+    }
+
+    // интервал занят устаревшими данными: очищаем под блокировкой записи
+    private void rotate(Slot slot, long epoch) {
+        slot.lock.writeLock().lock();
+        try {
+            if (slot.epoch < epoch) {
+                slot.likes.clear();
+                slot.topFilms.clear();
+                slot.likers.clear();
+                slot.activeUsers.clear();
+                slot.total.set(0);
+                slot.epoch = epoch;
+            }
+        } finally {
+            slot.lock.writeLock().unlock();
+        }
+    }
+
+    private Slot merge(Window window) {
+        long current = clock.millis() / window.slotMillis();
+        Slot merged = newSlot();
+        for (Slot slot : slots.get(window)) {
+            slot.lock.readLock().lock();
+            try {
+                if (slot.epoch > current - window.slots && slot.epoch <= current) {
+                    merged.likes.addAll(slot.likes);
+                    merged.topFilms.addAll(slot.topFilms);
+                    merged.likers.addAll(slot.likers);
+                    merged.activeUsers.addAll(slot.activeUsers);
+                    merged.total.addAndGet(slot.total.get());
+                }
+            } finally {
+                slot.lock.readLock().unlock();
+            }
+        }
+        return merged;
+    }
+
+    private Slot newSlot() {
+        return new Slot(new CountMinSketch(cmsWidth, cmsDepth), new SpaceSaving(heavyHitters),
+                new HyperLogLog(hllPrecision), new HyperLogLog(hllPrecision));
+    }
+
+    public enum Window {
+        HOUR(Duration.ofMinutes(5), 12),
+        DAY(Duration.ofHours(1), 24);
+
+        private final Duration slot;
+        private final int slots;
+
+        Window(Duration slot, int slots) {
+            this.slot = slot;
+            this.slots = slots;
+        }
+
+        public static Window parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Окно должно быть 'hour' или 'day'.");
+            }
+        }
+
+        private long slotMillis() {
+            return slot.toMillis();
+        }
+
+        private String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // estimate не меньше истинного числа лайков и с вероятностью confidence больше него не более чем на maxError
+    public record FilmLikes(int filmId, String window, long estimate, long totalLikes, long maxError,
+                            double confidence) {
+    }
+
+    // count завышен не больше чем на maxError = totalLikes / k; guaranteedCount — нижняя граница
+    public record TopFilms(String window, long totalLikes, long maxError, List<TopFilm> films) {
+    }
+
+    public record TopFilm(int filmId, long count, long guaranteedCount) {
+    }
+
+    // относительная стандартная ошибка обеих оценок — relativeStandardError
+    public record ActiveUsers(String window, long distinctLikers, long distinctActiveUsers,
+                              double relativeStandardError) {
+    }
+
+    private static final class Slot {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final CountMinSketch likes;
+        private final SpaceSaving topFilms;
+        private final HyperLogLog likers;
+        private final HyperLogLog activeUsers;
+        private final AtomicLong total = new AtomicLong();
+        private long epoch = -1;
+
+        private Slot(CountMinSketch likes, SpaceSaving topFilms, HyperLogLog likers, HyperLogLog activeUsers) {
+            this.likes = likes;
+            this.topFilms = topFilms;
+            this.likers = likers;
+            this.activeUsers = activeUsers;
+        }
+    }
+}
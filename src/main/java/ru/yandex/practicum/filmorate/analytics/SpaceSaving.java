@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Space-Saving: k счётчиков для самых частых элементов. Новый элемент при заполненной таблице
+// вытесняет минимальный и наследует его счёт как ошибку. Счёт элемента завышен не больше чем
+// на его error ≤ N / k; любой элемент с частотой больше N / k гарантированно есть в таблице.
+public class SpaceSaving {
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void add(long item, long count) {
+        total += count;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += count;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(item, new Counter(item, count, 0));
+            return;
+        }
+        Counter min = counters.values().stream().min(Comparator.comparingLong(c -> c.count)).orElseThrow();
+        counters.remove(min.item);
+        counters.put(item, new Counter(item, min.count + count, min.count));
+    }
+
+    // удаление уменьшает только отслеживаемый счётчик; оценки гарантированы для потока добавлений
+    public synchronized void remove(long item) {
+        total = Math.max(0, total - 1);
+        Counter counter = counters.get(item);
+        if (counter != null && counter.count > 0) {
+            counter.count--;
+            counter.error = Math.min(counter.error, counter.count);
+        }
+    }
+
+    // объединение сводок: счёт и ошибка складываются, затем остаются k наибольших
+    public synchronized void addAll(SpaceSaving other) {
+        List<Counter> merged;
+        synchronized (other) {
+            total += other.total;
+            merged = other.counters.values().stream().map(c -> new Counter(c.item, c.count, c.error)).toList();
+        }
+        for (Counter counter : merged) {
+            counters.merge(counter.item, counter, (mine, theirs) -> {
+                mine.count += theirs.count;
+                mine.error += theirs.error;
+                return mine;
+            });
+        }
+        if (counters.size() > capacity) {
+            List<Counter> sorted = new ArrayList<>(counters.values());
+            sorted.sort(Comparator.comparingLong((Counter c) -> c.count).reversed());
+            counters.clear();
+            sorted.stream().limit(capacity).forEach(c -> counters.put(c.item, c));
+        }
+    }
+
+    public synchronized List<HeavyHitter> top(int count) {
+        return counters.values().stream()
+                .sorted(Comparator.comparingLong((Counter c) -> c.count).reversed()
+                        .thenComparingLong(c -> c.item))
+                .limit(count)
+                .map(c -> new HeavyHitter(c.item, c.count, c.error))
+                .toList();
+    }
+
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+        total = 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // count — оценка сверху, count - error — гарантированный минимум
+    public record HeavyHitter(long item, long count, long error) {
+    }
+
+    private static final class Counter {
+        private final long item;
+        private long count;
+        private long error;
+
+        private Counter(long item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Счётчики кэшей и объединения запросов
+@RestController
+@RequestMapping("/admin/caches")
+@RequiredArgsConstructor
+public class CacheAdminController {
+    private final SingleFlight singleFlight;
+    private final EntityCaches entityCaches;
+
+    @GetMapping
+    public Map<String, Object> get() {
+        return Map.of("singleFlight", singleFlight.stats(), "entities", entityCaches.stats(),
+                "knownIds", entityCaches.knownIdsStats());
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Счётчики изменений по типам сущностей. Хранилища увеличивают их при каждой записи,
+// кэш ответов сравнивает с ними версию закэшированного ответа и строит из них ETag,
+// SingleFlight включает их в ключ объединяемых чтений.
+@Component
+public class CatalogVersions {
+    private final Map<Entity, AtomicLong> versions = new EnumMap<>(Entity.class);
+
+    public CatalogVersions() {
+        for (Entity entity : Entity.values()) {
+            versions.put(entity, new AtomicLong());
+        }
+    }
+
+    public long get(Entity entity) {
+        return versions.get(entity).get();
+    }
+
+    public void bump(Entity... entities) {
+        for (Entity entity : entities) {
+            versions.get(entity).incrementAndGet();
+        }
+    }
+
+    public enum Entity {
+        FILMS,
+        GENRES,
+        MPA,
+        DIRECTORS,
+        // пользователи и дружба
+        USERS,
+        // отзывы и их оценки
+        REVIEWS
+    }
+}
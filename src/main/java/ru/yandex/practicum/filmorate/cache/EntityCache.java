@@ -0,0 +1,370 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+// Ограниченный по суммарному весу кэш сущностей в духе W-TinyLFU. Новые записи попадают в маленькое
+// окно LRU (1% веса), вытесненные из окна допускаются в основную часть, только если обращались к ним
+// чаще, чем к кандидату на вытеснение оттуда. Основная часть - сегментированный LRU: пробная очередь
+// и защищённая (80%), куда запись переходит при повторном попадании. Частоты считает Count-Min
+// с 4-битными счётчиками, которые периодически делятся пополам, чтобы старая популярность забывалась.
+//
+// Кэш не знает, как загружать значения. Чтение идёт так: stamp(key), загрузка из БД, put(key, value, stamp).
+// Если между stamp и put запись была инвалидирована или изменена, put ничего не кладёт, и значение,
+// прочитанное до изменения, в кэш не попадёт. Значение может быть загружено не полностью (без части
+// связей): тогда более полное уже закэшированное им не заменяется. Значения кладутся неизменяемыми,
+// копирует вызывающий.
+public class EntityCache<K, V> {
+    // доля окна и защищённой очереди, в процентах
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int STRIPES = 1024;
+
+    private final String name;
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    // covers(a, b) - в a загружено всё, что есть в b
+    private final BiPredicate<V, V> covers;
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    private final Queue window = new Queue(Segment.WINDOW);
+    private final Queue probation = new Queue(Segment.PROBATION);
+    private final Queue protectedQueue = new Queue(Segment.PROTECTED);
+    private final long windowMax;
+    private final long protectedMax;
+    private final FrequencySketch sketch;
+    // счётчики инвалидаций: по полосам ключей и общий для массовых
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES);
+    private final AtomicLong epoch = new AtomicLong();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public EntityCache(String name, long maxWeight, ToIntFunction<V> weigher, BiPredicate<V, V> covers) {
+        this.name = name;
+        this.maxWeight = Math.max(0, maxWeight);
+        this.weigher = weigher;
+        this.covers = covers;
+        this.windowMax = Math.max(1, this.maxWeight * WINDOW_PERCENT / 100);
+        this.protectedMax = (this.maxWeight - windowMax) * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch((int) Math.min(Math.max(this.maxWeight, 16), 1 << 20));
+    }
+
+    public boolean isEnabled() {
+        return maxWeight > 0;
+    }
+
+    // значение, если оно есть и подходит запросу; иначе промах
+    public synchronized V getIfPresent(K key, Predicate<V> usable) {
+        if (!isEnabled()) {
+            return null;
+        }
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null || !usable.test(node.value)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    public long stamp(K key) {
+        return stripes.get(stripe(key)) + epoch.get();
+    }
+
+    // кладёт значение, если с момента stamp ключ не инвалидировался
+    public synchronized void put(K key, V value, long stamp) {
+        if (!isEnabled() || stamp(key) != stamp) {
+            return;
+        }
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        Node<K, V> node = data.get(key);
+        if (weight > maxWeight) {
+            // запись тяжелее всего кэша: старое значение тоже больше не актуально
+            if (node != null) {
+                remove(node);
+            }
+            return;
+        }
+        if (node != null) {
+            if (covers.test(node.value, value) && !covers.test(value, node.value)) {
+                return;
+            }
+            queueOf(node).weight += weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+        } else {
+            node = new Node<>(key, value, weight);
+            data.put(key, node);
+            window.addLast(node);
+        }
+        evict();
+    }
+
+    public void invalidate(K key) {
+        stripes.incrementAndGet(stripe(key));
+        synchronized (this) {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                remove(node);
+                invalidations++;
+            }
+        }
+    }
+
+    // точечное изменение закэшированного значения вместо инвалидации, например новый лайк;
+    // change получает неизменяемое значение и возвращает новое
+    public void update(K key, UnaryOperator<V> change) {
+        stripes.incrementAndGet(stripe(key));
+        synchronized (this) {
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                return;
+            }
+            V value = change.apply(node.value);
+            int weight = Math.max(1, weigher.applyAsInt(value));
+            if (weight > maxWeight) {
+                remove(node);
+                return;
+            }
+            queueOf(node).weight += weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+            evict();
+        }
+    }
+
+    public void invalidateAll(Iterable<K> keys) {
+        for (K key : keys) {
+            invalidate(key);
+        }
+    }
+
+    // для изменений, которые затрагивают заранее неизвестные записи, например имя режиссёра
+    public void invalidateIf(Predicate<V> affected) {
+        epoch.incrementAndGet();
+        synchronized (this) {
+            data.values().removeIf(node -> {
+                if (!affected.test(node.value)) {
+                    return false;
+                }
+                queueOf(node).unlink(node);
+                invalidations++;
+                return true;
+            });
+        }
+    }
+
+    public synchronized Stats stats() {
+        long requests = hits + misses;
+        return new Stats(name, isEnabled(), maxWeight, window.weight + probation.weight + protectedQueue.weight,
+                data.size(), hits, misses, requests == 0 ? 0 : (double) hits / requests, evictions, invalidations);
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> window.moveToEnd(node);
+            case PROTECTED -> protectedQueue.moveToEnd(node);
+            case PROBATION -> {
+                probation.unlink(node);
+                protectedQueue.addLast(node);
+                // защищённая очередь переполнена: самые давние возвращаются в пробную
+                while (protectedQueue.weight > protectedMax && protectedQueue.head != null) {
+                    Node<K, V> demoted = protectedQueue.head;
+                    protectedQueue.unlink(demoted);
+                    probation.addLast(demoted);
+                }
+            }
+        }
+    }
+
+    // переполненное окно сливает самые давние записи в основную часть, а та вытесняет
+    // менее частые: либо кандидата из окна, либо свои записи
+    private void evict() {
+        while (window.weight > windowMax && window.head != null) {
+            Node<K, V> candidate = window.head;
+            window.unlink(candidate);
+            probation.addLast(candidate);
+            while (mainWeight() > maxWeight - windowMax) {
+                Node<K, V> victim = probation.head != candidate ? probation.head : protectedQueue.head;
+                if (victim == null) {
+                    victim = candidate;
+                }
+                if (victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                    victim = candidate;
+                }
+                remove(victim);
+                evictions++;
+                if (victim == candidate) {
+                    break;
+                }
+            }
+        }
+        while (mainWeight() > maxWeight - windowMax) {
+            // значение в основной части потяжелело при замене
+            Node<K, V> victim = probation.head != null ? probation.head : protectedQueue.head;
+            remove(victim);
+            evictions++;
+        }
+    }
+
+    private long mainWeight() {
+        return probation.weight + protectedQueue.weight;
+    }
+
+    private void remove(Node<K, V> node) {
+        queueOf(node).unlink(node);
+        data.remove(node.key);
+    }
+
+    private Queue queueOf(Node<K, V> node) {
+        return switch (node.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedQueue;
+        };
+    }
+
+    private static int stripe(Object key) {
+        return (int) (FrequencySketch.mix(key.hashCode()) & (STRIPES - 1));
+    }
+
+    public record Stats(String name, boolean enabled, long maxWeight, long weight, int entries, long hits,
+                        long misses, double hitRate, long evictions, long invalidations) {
+    }
+
+    private enum Segment {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private V value;
+        private int weight;
+        private Segment queue;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // двусвязный список LRU: в начале самые давние
+    private final class Queue {
+        private final Segment segment;
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private long weight;
+
+        Queue(Segment segment) {
+            this.segment = segment;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.queue = segment;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToEnd(Node<K, V> node) {
+            if (node != tail) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+    }
+
+    // 4 строки 4-битных счётчиков; после 10 × width добавлений все счётчики делятся пополам
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int expected) {
+            int width = Integer.highestOneBit(Math.max(expected - 1, 1)) << 1;
+            this.counters = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.resetAt = 10 * width;
+        }
+
+        void increment(Object key) {
+            long hash = mix(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAt) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] = (byte) (counters[i] >>> 1);
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            long hash = mix(key.hashCode());
+            int min = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[index(hash, row)]);
+            }
+            return min;
+        }
+
+        private int index(long hash, int row) {
+            int h = (int) (hash >>> (row * 16)) ^ (int) (hash >>> 32) * (2 * row + 1);
+            return row * (mask + 1) + (h & mask);
+        }
+
+        // финализатор SplitMix64: соседние id расходятся по разным счётчикам
+        static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
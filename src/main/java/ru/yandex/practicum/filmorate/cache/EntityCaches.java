@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Кэши собранных фильмов и пользователей по id. Хранилища читают через них и сами же после каждой
+// записи инвалидируют или точечно правят затронутые записи. Вес записи - строка самой сущности
+// плюс по единице на каждый жанр, лайк, режиссёра или друга: популярные фильмы с тысячами лайков
+// занимают соответственно больше места. Карты существующих id отсекают запросы с несуществующими id
+// ещё до кэша.
+@Component
+public class EntityCaches {
+    private final EntityCache<Integer, Film> films;
+    private final EntityCache<Integer, User> users;
+    private final KnownIds filmIds;
+    private final KnownIds userIds;
+
+    public EntityCaches(boolean enabled, long filmsMaxWeight, long usersMaxWeight) {
+        this(null, enabled, filmsMaxWeight, usersMaxWeight, false);
+    }
+
+    @Autowired
+    public EntityCaches(JdbcTemplate jdbcTemplate,
+                        @Value("${filmorate.entity-cache.enabled:true}") boolean enabled,
+                        @Value("${filmorate.entity-cache.films.max-weight:200000}") long filmsMaxWeight,
+                        @Value("${filmorate.entity-cache.users.max-weight:100000}") long usersMaxWeight,
+                        @Value("${filmorate.known-ids.enabled:true}") boolean knownIds) {
+        this.films = new EntityCache<>("films", enabled ? filmsMaxWeight : 0, EntityCaches::weightOf,
+                EntityCaches::covers);
+        this.users = new EntityCache<>("users", enabled ? usersMaxWeight : 0, EntityCaches::weightOf,
+                EntityCaches::covers);
+        this.filmIds = new KnownIds("films", jdbcTemplate, "SELECT id FROM films", knownIds);
+        this.userIds = new KnownIds("users", jdbcTemplate, "SELECT id FROM users", knownIds);
+    }
+
+    public static EntityCaches disabled() {
+        return new EntityCaches(false, 0, 0);
+    }
+
+    public EntityCache<Integer, Film> films() {
+        return films;
+    }
+
+    public EntityCache<Integer, User> users() {
+        return users;
+    }
+
+    public KnownIds filmIds() {
+        return filmIds;
+    }
+
+    public KnownIds userIds() {
+        return userIds;
+    }
+
+    public List<EntityCache.Stats> stats() {
+        return List.of(films.stats(), users.stats());
+    }
+
+    public List<KnownIds.Stats> knownIdsStats() {
+        return List.of(filmIds.stats(), userIds.stats());
+    }
+
+    private static int weightOf(Film film) {
+        return 1 + sizeOf(film.getGenres()) + sizeOf(film.getLikes()) + sizeOf(film.getDirectors());
+    }
+
+    private static int weightOf(User user) {
+        return 1 + sizeOf(user.getFriends());
+    }
+
+    private static boolean covers(Film a, Film b) {
+        return covers(a.getGenres(), b.getGenres()) && covers(a.getLikes(), b.getLikes())
+                && covers(a.getDirectors(), b.getDirectors());
+    }
+
+    private static boolean covers(User a, User b) {
+        return covers(a.getFriends(), b.getFriends());
+    }
+
+    // незагруженная связь - null
+    private static boolean covers(Collection<?> a, Collection<?> b) {
+        return a != null || b == null;
+    }
+
+    private static int sizeOf(Collection<?> relation) {
+        return relation == null ? 0 : relation.size();
+    }
+
+    // копия для кэша: свои рейтинг, жанры и режиссёры в неизменяемых коллекциях, так что правки
+    // у вызывающего в кэш не попадают
+    public static Film frozen(Film film) {
+        Film copy = shell(film);
+        copy.setGenres(copy.getGenres() == null ? null : List.copyOf(copy.getGenres()));
+        copy.setLikes(copy.getLikes() == null ? null : Set.copyOf(copy.getLikes()));
+        copy.setDirectors(copy.getDirectors() == null ? null : Collections.unmodifiableSet(copy.getDirectors()));
+        return copy;
+    }
+
+    public static User frozen(User user) {
+        User copy = shell(user);
+        copy.setFriends(copy.getFriends() == null ? null : Set.copyOf(copy.getFriends()));
+        return copy;
+    }
+
+    // полная копия с изменяемыми коллекциями: вызывающий может менять в ней что угодно, не трогая кэш
+    public static Film shell(Film film) {
+        List<Genre> genres = null;
+        if (film.getGenres() != null) {
+            genres = new ArrayList<>(film.getGenres().size());
+            for (Genre genre : film.getGenres()) {
+                genres.add(copyOf(genre));
+            }
+        }
+        Set<Director> directors = null;
+        if (film.getDirectors() != null) {
+            directors = new LinkedHashSet<>();
+            for (Director director : film.getDirectors()) {
+                directors.add(copyOf(director));
+            }
+        }
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), copyOf(film.getMpa()), genres,
+                film.getLikes() == null ? null : new HashSet<>(film.getLikes()), directors);
+    }
+
+    public static User shell(User user) {
+        return new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(),
+                user.getFriends() == null ? null : new HashSet<>(user.getFriends()));
+    }
+
+    private static Mpa copyOf(Mpa mpa) {
+        if (mpa == null) {
+            return null;
+        }
+        Mpa copy = new Mpa();
+        copy.setId(mpa.getId());
+        copy.setName(mpa.getName());
+        return copy;
+    }
+
+    private static Genre copyOf(Genre genre) {
+        Genre copy = new Genre();
+        copy.setId(genre.getId());
+        copy.setName(genre.getName());
+        return copy;
+    }
+
+    private static Director copyOf(Director director) {
+        return new Director(director.getId(), director.getName());
+    }
+}
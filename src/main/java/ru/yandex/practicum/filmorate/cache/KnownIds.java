@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Битовая карта существующих id одной таблицы: запрос с несуществующим id отвечается без SQL.
+// id выдаёт identity-столбец подряд, поэтому на 100 тысяч записей карта занимает около 12 КБ.
+// Загружается одним запросом при первой проверке; хранилище отмечает выданные и удалённые id.
+// Карта может ошибаться только в сторону "есть" (например, после отката вставки) - тогда
+// отвечает запрос. id больше наибольшего известного тоже проверяется запросом, так что новые строки
+// видны и до отметки. Строки с пропущенными id, вставленные в обход хранилища, требуют reset().
+// Проверка не берёт блокировок: карта публикуется через volatile-ссылку, а загрузка, отметки и рост
+// карты идут под монитором.
+public class KnownIds {
+    private final String name;
+    private final JdbcTemplate jdbcTemplate;
+    private final String loadSql;
+    private final boolean enabled;
+    // null - ещё не загружена
+    private volatile Bits bits;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+
+    public KnownIds(String name, JdbcTemplate jdbcTemplate, String loadSql, boolean enabled) {
+        this.name = name;
+        this.jdbcTemplate = jdbcTemplate;
+        this.loadSql = loadSql;
+        this.enabled = enabled;
+    }
+
+    // false - id точно нет, в БД ходить не нужно
+    public boolean mightExist(int id) {
+        if (!enabled) {
+            return true;
+        }
+        boolean known = id > 0 && contains(id);
+        (known ? passed : rejected).increment();
+        return known;
+    }
+
+    // вызывается сразу после вставки, до того как id увидит клиент
+    public synchronized void added(int id) {
+        Bits current = bits;
+        if (current == null) {
+            return;
+        }
+        if (id >= current.capacity()) {
+            // читатели старой карты считают этот id больше наибольшего и идут в БД
+            current = current.grow(id);
+            bits = current;
+        }
+        current.set(id);
+    }
+
+    public synchronized void removed(int id) {
+        Bits current = bits;
+        if (current != null) {
+            current.clear(id);
+        }
+    }
+
+    // перечитать карту при следующей проверке
+    public synchronized void reset() {
+        bits = null;
+    }
+
+    public synchronized Stats stats() {
+        Bits current = bits;
+        return new Stats(name, enabled, current != null, current == null ? 0 : current.cardinality(),
+                rejected.sum(), passed.sum());
+    }
+
+    private boolean contains(int id) {
+        Bits current = bits;
+        if (current == null) {
+            current = load();
+        }
+        return current.mightContain(id);
+    }
+
+    // вставка ждёт окончания загрузки на этом же мониторе, поэтому id, выданный во время загрузки, не теряется
+    private synchronized Bits load() {
+        if (bits == null) {
+            BitSet loaded = new BitSet();
+            jdbcTemplate.query(loadSql, rs -> {
+                loaded.set(rs.getInt(1));
+            });
+            bits = new Bits(loaded.toLongArray(), loaded.length() - 1);
+        }
+        return bits;
+    }
+
+    // слова карты меняются только под монитором KnownIds, читаются без блокировок
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private volatile int maxId;
+
+        Bits(long[] words, int maxId) {
+            this.words = new AtomicLongArray(words);
+            this.maxId = maxId;
+        }
+
+        boolean mightContain(int id) {
+            return id > maxId || (words.get(id >>> 6) & (1L << id)) != 0;
+        }
+
+        int capacity() {
+            return words.length() << 6;
+        }
+
+        // бит ставится раньше, чем растёт maxId: читатель, увидевший новый maxId, видит и бит
+        void set(int id) {
+            int index = id >>> 6;
+            words.set(index, words.get(index) | (1L << id));
+            if (id > maxId) {
+                maxId = id;
+            }
+        }
+
+        void clear(int id) {
+            if (id < capacity()) {
+                int index = id >>> 6;
+                words.set(index, words.get(index) & ~(1L << id));
+            }
+        }
+
+        Bits grow(int id) {
+            long[] copy = new long[Math.max((id >>> 6) + 1, words.length() * 2)];
+            for (int i = 0; i < words.length(); i++) {
+                copy[i] = words.get(i);
+            }
+            return new Bits(copy, maxId);
+        }
+
+        int cardinality() {
+            int count = 0;
+            for (int i = 0; i < words.length(); i++) {
+                count += Long.bitCount(words.get(i));
+            }
+            return count;
+        }
+    }
+
+    public record Stats(String name, boolean enabled, boolean loaded, int ids, long rejected, long passed) {
+    }
+}
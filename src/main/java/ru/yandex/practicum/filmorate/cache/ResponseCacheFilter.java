@@ -0,0 +1,259 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.serialization.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Кэш ответов каталога: GET /films, /films/{id}, /genres, /mpa, /directors.
+// ETag строится из счётчика изменений сущности, If-None-Match с актуальным ETag получает 304
+// без обращения к контроллеру. Тела ответов хранятся уже сериализованными и отдаются,
+// пока счётчик не изменился, минуя и SQL, и Jackson. Стоит раньше ограничителя нагрузки.
+// Ответ не буферизуется: тело сразу уходит клиенту, а копия копится, пока не превысит max-entry-bytes.
+// Большие списки (GET /films на весь каталог) так и идут потоком, и обрыв клиента виден на записи,
+// но в кэш не попадают - для них остаётся только 304 по ETag.
+@Slf4j
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class ResponseCacheFilter extends OncePerRequestFilter {
+    private static final Pattern FILMS = Pattern.compile("/films(/\\d+)?/?");
+    private static final Pattern GENRES = Pattern.compile("/genres(/\\d+)?/?");
+    private static final Pattern MPA = Pattern.compile("/mpa(/\\d+)?/?");
+    private static final Pattern DIRECTORS = Pattern.compile("/directors(/\\d+)?/?");
+
+    private final CatalogVersions versions;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final Map<String, CachedResponse> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    public ResponseCacheFilter(CatalogVersions versions,
+                               @Value("${filmorate.response-cache.enabled:true}") boolean enabled,
+                               @Value("${filmorate.response-cache.max-bytes:33554432}") long maxBytes,
+                               @Value("${filmorate.response-cache.max-entry-bytes:262144}") int maxEntryBytes) {
+        this.versions = versions;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !"GET".equals(request.getMethod()) || entityOf(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        Entity entity = entityOf(request.getRequestURI());
+        // версию читаем до выполнения запроса: если данные поменяются во время него,
+        // ответ сохранится со старой версией и следующий запрос его не примет
+        long version = versions.get(entity);
+        // у JSON, CBOR и Smile разные тела, поэтому и ETag, и ключ кэша свои для каждого формата
+        WireFormat format = WireFormat.fromAccept(request.getHeader(HttpHeaders.ACCEPT));
+        String representation = format == WireFormat.JSON ? "" : "-" + format.name().toLowerCase();
+        String tag = "\"" + entity.name().toLowerCase() + "-" + version + representation + "\"";
+        // слабый ETag: сильный Tomcat не сжимает, а для If-None-Match сравнение всё равно слабое
+        String etag = "W/" + tag;
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(tag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            return;
+        }
+
+        String key = request.getRequestURI() + (request.getQueryString() != null ? "?" + request.getQueryString() : "")
+                + representation;
+        CachedResponse cached = get(key);
+        if (cached != null && cached.version() == version) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setContentType(cached.contentType());
+            response.setContentLength(cached.body().length);
+            response.getOutputStream().write(cached.body());
+            return;
+        }
+
+        TeeResponse tee = new TeeResponse(response, etag, maxEntryBytes);
+        chain.doFilter(request, tee);
+        tee.finish();
+        byte[] body = tee.captured();
+        if (tee.getStatus() == HttpServletResponse.SC_OK && body != null) {
+            put(key, new CachedResponse(version, tee.getContentType(), body));
+        }
+    }
+
+    private static Entity entityOf(String uri) {
+        if (FILMS.matcher(uri).matches()) {
+            return Entity.FILMS;
+        }
+        if (GENRES.matcher(uri).matches()) {
+            return Entity.GENRES;
+        }
+        if (MPA.matcher(uri).matches()) {
+            return Entity.MPA;
+        }
+        if (DIRECTORS.matcher(uri).matches()) {
+            return Entity.DIRECTORS;
+        }
+        return null;
+    }
+
+    private synchronized CachedResponse get(String key) {
+        return cache.get(key);
+    }
+
+    // LRU с ограничением по суммарному размеру тел
+    private synchronized void put(String key, CachedResponse response) {
+        if (response.body().length > maxBytes) {
+            return;
+        }
+        CachedResponse previous = cache.put(key, response);
+        cachedBytes += response.body().length - (previous != null ? previous.body().length : 0);
+        var iterator = cache.values().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            cachedBytes -= iterator.next().body().length;
+            iterator.remove();
+        }
+    }
+
+    private record CachedResponse(long version, String contentType, byte[] body) {
+    }
+
+    // пишет тело сразу в ответ и попутно копит его копию до limit байт. ETag ставится перед первой
+    // записью, когда уже известен статус: ответ с ошибкой его не получает
+    private static final class TeeResponse extends HttpServletResponseWrapper {
+        private final String etag;
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        private boolean tagged;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        TeeResponse(HttpServletResponse response, String etag, int limit) {
+            super(response);
+            this.etag = etag;
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new TeeStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            beforeCommit();
+            if (writer != null) {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            beforeCommit();
+        }
+
+        // null - тело не поместилось в limit
+        byte[] captured() {
+            return copy == null ? null : copy.toByteArray();
+        }
+
+        private void beforeCommit() {
+            if (!tagged && !isCommitted() && getStatus() == HttpServletResponse.SC_OK) {
+                setHeader(HttpHeaders.ETAG, etag);
+            }
+            tagged = true;
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (copy == null) {
+                return;
+            }
+            if (copy.size() + len > limit) {
+                copy = null;
+                return;
+            }
+            copy.write(b, off, len);
+        }
+
+        private final class TeeStream extends ServletOutputStream {
+            private final ServletOutputStream delegate;
+
+            TeeStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                beforeCommit();
+                capture(b, off, len);
+                delegate.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                beforeCommit();
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                beforeCommit();
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                delegate.setWriteListener(listener);
+            }
+        }
+    }
+}
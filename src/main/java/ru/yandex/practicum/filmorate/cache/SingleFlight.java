@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.limit.QueryDeadline;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Объединение одинаковых тяжёлых чтений: одновременные вызовы с теми же аргументами ждут
+// одно вычисление и получают один и тот же результат (изменять его нельзя). С ttl > 0 результат
+// ещё столько же отдаётся из памяти. В ключ входят версии сущностей, от которых зависит ответ,
+// поэтому после записи новый вызов не присоединится к вычислению, начатому до неё.
+@Component
+public class SingleFlight {
+    // раз в столько вычислений из памяти выметаются истёкшие результаты
+    private static final int SWEEP_EVERY = 64;
+
+    private final CatalogVersions versions;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Key, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    @Autowired
+    public SingleFlight(CatalogVersions versions,
+                        @Value("${filmorate.single-flight.enabled:true}") boolean enabled,
+                        @Value("${filmorate.single-flight.ttl:0ms}") Duration ttl) {
+        this.versions = versions;
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public static SingleFlight disabled() {
+        return new SingleFlight(new CatalogVersions(), false, Duration.ZERO);
+    }
+
+    // args - уже нормализованные аргументы; dependsOn - сущности, изменение которых меняет ответ
+    public <T> T run(String operation, List<?> args, Supplier<T> loader, Entity... dependsOn) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Long[] seen = new Long[dependsOn.length];
+        for (int i = 0; i < dependsOn.length; i++) {
+            seen[i] = versions.get(dependsOn[i]);
+        }
+        Key key = new Key(operation, args, List.of(seen));
+        while (true) {
+            Flight flight = new Flight();
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                return load(key, flight, loader);
+            }
+            if (current.isExpired(System.nanoTime())) {
+                flights.remove(key, current);
+                continue;
+            }
+            shared.increment();
+            try {
+                return current.await();
+            } catch (QueryTimeoutException e) {
+                // вычисление бросил тот, кто его начал (истёк его срок или он отключился); у ждущего
+                // свой срок, и пока он не истёк, вычисление запускается заново
+                QueryDeadline deadline = QueryDeadline.current();
+                if (!current.abandoned || deadline != null && deadline.isAborted()) {
+                    throw e;
+                }
+                flights.remove(key, current);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, Duration.ofNanos(ttlNanos).toMillis(), loads.sum(), shared.sum(), flights.size());
+    }
+
+    private <T> T load(Key key, Flight flight, Supplier<T> loader) {
+        loads.increment();
+        T value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            // ошибку получают и ждущие, но в памяти она не остаётся
+            flights.remove(key, flight);
+            QueryDeadline deadline = QueryDeadline.current();
+            flight.abandoned = deadline != null && deadline.isAborted();
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        if (ttlNanos > 0) {
+            flight.expiresAt = System.nanoTime() + ttlNanos;
+            flight.cached = true;
+        } else {
+            flights.remove(key, flight);
+        }
+        flight.result.complete(value);
+        if (ttlNanos > 0 && loads.sum() % SWEEP_EVERY == 0) {
+            long now = System.nanoTime();
+            flights.values().removeIf(f -> f.isExpired(now));
+        }
+        return value;
+    }
+
+    public record Stats(boolean enabled, long ttlMillis, long loads, long shared, int entries) {
+    }
+
+    private record Key(String operation, List<?> args, List<Long> versions) {
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile boolean cached;
+        private volatile long expiresAt;
+        // вычисление прервано по сроку запроса, который его начал
+        private volatile boolean abandoned;
+
+        // пока вычисление идёт, результат не истекает
+        boolean isExpired(long now) {
+            return cached && now - expiresAt >= 0;
+        }
+
+        // ждёт не дольше срока своего запроса
+        @SuppressWarnings("unchecked")
+        <T> T await() {
+            QueryDeadline deadline = QueryDeadline.current();
+            try {
+                if (deadline == null) {
+                    return (T) result.join();
+                }
+                return (T) result.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new QueryTimeoutException("Срок выполнения запроса истёк");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryTimeoutException("Ожидание прервано");
+            } catch (CompletionException | ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new CompletionException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics.Window;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+// Приближённая аналитика лайков за последний час или день (window=hour|day), только чтение.
+// Каждый ответ содержит границу ошибки своей оценки.
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+    private final LikeAnalytics likeAnalytics;
+
+    public AnalyticsController(LikeAnalytics likeAnalytics) {
+        this.likeAnalytics = likeAnalytics;
+    }
+
+    // Count-Min: оценка не меньше истины и превышает её не больше чем на maxError с вероятностью confidence
+    @GetMapping("/likes/films/{id}")
+    public ResponseEntity<LikeAnalytics.FilmLikes> filmLikes(@PathVariable int id,
+                                                             @RequestParam(defaultValue = "hour") String window) {
+        return ResponseEntity.ok(likeAnalytics.filmLikes(id, Window.parse(window)));
+    }
+
+    // Space-Saving: все фильмы с долей лайков больше 1/k попадают в список, count завышен не больше maxError
+    @GetMapping("/likes/top")
+    public ResponseEntity<LikeAnalytics.TopFilms> topFilms(@RequestParam(defaultValue = "day") String window,
+                                                           @RequestParam(defaultValue = "10") int count) {
+        if (count <= 0) {
+            throw new ValidationException("Количество фильмов должно быть положительным числом.");
+        }
+        return ResponseEntity.ok(likeAnalytics.topFilms(Window.parse(window), count));
+    }
+
+    // HyperLogLog: различные лайкавшие и активные пользователи, относительная ошибка ~1.6% при p = 12
+    @GetMapping("/users/active")
+    public ResponseEntity<LikeAnalytics.ActiveUsers> activeUsers(@RequestParam(defaultValue = "hour") String window) {
+        return ResponseEntity.ok(likeAnalytics.activeUsers(Window.parse(window)));
+    }
+}
@@ -1,12 +1,18 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.serialization.FilmListStreamer;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
 import java.util.List;
 
 @Slf4j
@@ -14,9 +20,11 @@ import java.util.List;
 @RequestMapping("/films")
 public class FilmController {
     private final FilmService filmService;
+    private final FilmListStreamer filmListStreamer;
 
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, FilmListStreamer filmListStreamer) {
         this.filmService = filmService;
+        this.filmListStreamer = filmListStreamer;
     }
 
     @PostMapping
@@ -31,14 +39,30 @@ public class FilmController {
         return ResponseEntity.ok(updated);
     }
 
+    // во всех GET: ?view=summary (без лайков и режиссёров) или ?fields=genres,likes,directors,
+    // хранилище загружает только выбранные связи
     @GetMapping("/{id}")
-    public ResponseEntity<Film> getFilm(@PathVariable int id) {
-        return ResponseEntity.ok(filmService.getFilm(id));
+    public ResponseEntity<Film> getFilm(@PathVariable int id,
+                                        @RequestParam(required = false) String view,
+                                        @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(filmService.getFilm(id, FilmFields.of(view, fields)));
     }
 
+    // большие списки пишутся в ответ потоком, минуя List<Film>
     @GetMapping
-    public ResponseEntity<List<Film>> getAllFilms() {
-        return ResponseEntity.ok(filmService.getAllFilms());
+    public void getAllFilms(@RequestParam(required = false) String view,
+                            @RequestParam(required = false) List<String> fields,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FilmFields selected = FilmFields.of(view, fields);
+        filmListStreamer.write(request, response, sink -> filmService.streamAllFilms(selected, sink));
+    }
+
+    // GET /films?ids=3,1,2 - вместо запроса на каждый фильм
+    @GetMapping(params = "ids")
+    public ResponseEntity<BatchResult<Film>> getFilmsByIds(@RequestParam List<Integer> ids,
+                                                           @RequestParam(required = false) String view,
+                                                           @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(filmService.getFilmsByIds(ids, FilmFields.of(view, fields)));
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -54,10 +78,22 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public ResponseEntity<List<Film>> getPopularFilms(@RequestParam(defaultValue = "10") int count,
-                                                      @RequestParam(required = false) Integer genreId,
-                                                      @RequestParam(required = false) Integer year) {
-        return ResponseEntity.ok(filmService.getPopularFilms(count, genreId, year));
+    public void getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                @RequestParam(required = false) Integer genreId,
+                                @RequestParam(required = false) Integer year,
+                                @RequestParam(required = false) String view,
+                                @RequestParam(required = false) List<String> fields,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FilmFields selected = FilmFields.of(view, fields);
+        filmListStreamer.write(request, response,
+                sink -> filmService.streamPopularFilms(count, genreId, year, selected, sink));
+    }
+
+    @GetMapping("/trending")
+    public ResponseEntity<List<Film>> getTrendingFilms(@RequestParam(defaultValue = "10") int count,
+                                                       @RequestParam(required = false) String view,
+                                                       @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(filmService.getTrendingFilms(count, FilmFields.of(view, fields)));
     }
 
     //метод по задаче удаление
@@ -69,20 +105,28 @@ public class FilmController {
 
     // получение всех фильмов режиссера
     @GetMapping("/director/{directorId}")
-    public ResponseEntity<List<Film>> filmByDirector(@PathVariable int directorId, @RequestParam String sortBy) {
-        return ResponseEntity.ok(filmService.getFilmsByDirectorSorted(directorId, sortBy));
+    public ResponseEntity<List<Film>> filmByDirector(@PathVariable int directorId, @RequestParam String sortBy,
+                                                     @RequestParam(required = false) String view,
+                                                     @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(filmService.getFilmsByDirectorSorted(directorId, sortBy, FilmFields.of(view, fields)));
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Film>> getFilmsByFilter(@RequestParam(required = false) String query, @RequestParam(required = false) List<String> by) {
-        return ResponseEntity.ok(filmService.getFilmsByFilter(query, by));
+    public void getFilmsByFilter(@RequestParam(required = false) String query, @RequestParam(required = false) List<String> by,
+                                 @RequestParam(required = false) String view,
+                                 @RequestParam(required = false) List<String> fields,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FilmFields selected = FilmFields.of(view, fields);
+        filmListStreamer.write(request, response, sink -> filmService.streamFilmsByFilter(query, by, selected, sink));
     }
 
     @GetMapping("/common")
     public ResponseEntity<List<Film>> getCommonFilms(
             @RequestParam int userId,
-            @RequestParam int friendId) {
+            @RequestParam int friendId,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) List<String> fields) {
 
-        return ResponseEntity.ok(filmService.getCommonFilms(userId, friendId));
+        return ResponseEntity.ok(filmService.getCommonFilms(userId, friendId, FilmFields.of(view, fields)));
     }
 }
\ No newline at end of file
@@ -4,9 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.model.UserFields;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -36,14 +39,26 @@ public class UserController {
         return ResponseEntity.ok(updated);
     }
 
+    // во всех GET: ?view=summary или ?fields=... без friends - друзья не загружаются
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUser(@PathVariable int id) {
-        return ResponseEntity.ok(userService.getUser(id));
+    public ResponseEntity<User> getUser(@PathVariable int id,
+                                        @RequestParam(required = false) String view,
+                                        @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(userService.getUser(id, UserFields.of(view, fields)));
     }
 
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) String view,
+                                                  @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(userService.getAllUsers(UserFields.of(view, fields)));
+    }
+
+    // GET /users?ids=3,1,2 - вместо запроса на каждого пользователя
+    @GetMapping(params = "ids")
+    public ResponseEntity<BatchResult<User>> getUsersByIds(@RequestParam List<Integer> ids,
+                                                           @RequestParam(required = false) String view,
+                                                           @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(userService.getUsersByIds(ids, UserFields.of(view, fields)));
     }
 
     @PutMapping("/{id}/friends/{friendId}")
@@ -59,19 +74,25 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public ResponseEntity<List<User>> getFriends(@PathVariable int id) {
-        return ResponseEntity.ok(userService.getFriends(id));
+    public ResponseEntity<List<User>> getFriends(@PathVariable int id,
+                                                 @RequestParam(required = false) String view,
+                                                 @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(userService.getFriends(id, UserFields.of(view, fields)));
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
-    public ResponseEntity<List<User>> getCommonFriends(@PathVariable int id, @PathVariable int otherId) {
-        return ResponseEntity.ok(userService.getCommonFriends(id, otherId));
+    public ResponseEntity<List<User>> getCommonFriends(@PathVariable int id, @PathVariable int otherId,
+                                                       @RequestParam(required = false) String view,
+                                                       @RequestParam(required = false) List<String> fields) {
+        return ResponseEntity.ok(userService.getCommonFriends(id, otherId, UserFields.of(view, fields)));
     }
 
-    //по задаче Рекомендации
+    //по задаче Рекомендации; view и fields - как у GET /films
     @GetMapping("/{id}/recommendations")
-    public ResponseEntity<List<Film>> getRecommendations(@PathVariable int id) {
-        List<Film> recommended = filmService.getRecommendedFilms(id);
+    public ResponseEntity<List<Film>> getRecommendations(@PathVariable int id,
+                                                         @RequestParam(required = false) String view,
+                                                         @RequestParam(required = false) List<String> fields) {
+        List<Film> recommended = filmService.getRecommendedFilms(id, FilmFields.of(view, fields));
         return ResponseEntity.ok(recommended);
     }
 
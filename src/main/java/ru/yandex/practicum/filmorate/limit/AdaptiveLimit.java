@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import java.util.concurrent.TimeUnit;
+
+// Адаптивный лимит одновременных запросов по градиенту задержки. Короткое среднее задержки (около 10
+// запросов) сравнивается с длинным (около 600), которое служит оценкой задержки без очереди. Пока они
+// близки, лимит растёт на sqrt(limit); когда короткое растёт - в БД или пуле соединений копится очередь,
+// и лимит уменьшается пропорционально, но не больше чем вдвое за шаг. Неудачный запрос (исключение
+// или 5xx) уменьшает лимит на 10%, как в AIMD. Лимит не растёт, пока занята меньше половины:
+// иначе после простоя он уходил бы к максимуму, ничего не проверив. Задержка, которая держится
+// долго и при сниженном лимите (например, медленнее стала сама БД), постепенно становится новой нормой.
+public class AdaptiveLimit {
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 1.0 / 600;
+    // короткое среднее может превышать длинное в полтора раза без снижения лимита
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    // средние задержки, нс; 0 - замеров ещё не было
+    private double shortRtt;
+    private double longRtt;
+
+    private long accepted;
+    private long rejected;
+    private long succeeded;
+    private long failed;
+    private long totalNanos;
+    private long maxNanos;
+
+    // старт с половины потолка
+    public AdaptiveLimit(String name, int minLimit, int maxLimit) {
+        this(name, minLimit, maxLimit / 2.0, maxLimit);
+    }
+
+    public AdaptiveLimit(String name, int minLimit, double initialLimit, int maxLimit) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = clamp(initialLimit);
+    }
+
+    // false - лимит исчерпан, запрос нужно отклонить сразу
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        accepted++;
+        return true;
+    }
+
+    public synchronized void onSuccess(long nanos) {
+        int load = inFlight;
+        inFlight--;
+        succeeded++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+
+        shortRtt = shortRtt == 0 ? nanos : shortRtt + (nanos - shortRtt) * SHORT_WEIGHT;
+        longRtt = longRtt == 0 ? nanos : longRtt + (nanos - longRtt) * LONG_WEIGHT;
+        // нагрузка спала: длинное среднее, выросшее за время перегрузки, быстрее догоняет короткое
+        if (longRtt > 2 * shortRtt) {
+            longRtt *= 0.95;
+        }
+        if (load < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    public synchronized void onFailure() {
+        inFlight--;
+        failed++;
+        limit = clamp(limit * BACKOFF);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized Stats stats() {
+        long requests = accepted + rejected;
+        return new Stats(name, (int) limit, minLimit, maxLimit, inFlight, accepted, rejected,
+                requests == 0 ? 0 : (double) rejected / requests, failed,
+                millis(succeeded == 0 ? 0 : (double) totalNanos / succeeded), millis(maxNanos),
+                millis(shortRtt), millis(longRtt));
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // recentMillis - короткое среднее задержки, baselineMillis - длинное
+    public record Stats(String name, int limit, int minLimit, int maxLimit, int inFlight, long accepted,
+                        long rejected, double rejectRate, long failed, double avgMillis, double maxMillis,
+                        double recentMillis, double baselineMillis) {
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Текущие лимиты, задержки и отказы по классам запросов, прерванные по сроку запросы
+@RestController
+@RequestMapping("/admin/limits")
+@RequiredArgsConstructor
+public class ConcurrencyLimitController {
+    private final ConcurrencyLimits limits;
+    private final QueryDeadlines deadlines;
+
+    @GetMapping
+    public Map<String, Object> get() {
+        return Map.of("enabled", limits.isEnabled(), "retryAfterSeconds", limits.retryAfterSeconds(),
+                "classes", limits.stats(), "deadlines", deadlines.stats());
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Лимиты по классам запросов. Потолок каждого дорогого класса по умолчанию выводится из пула соединений:
+// пул без запаса для дешёвых запросов делится поровну между дорогими классами, так что даже при перегрузке
+// всех дорогих дешёвым запросам остаются соединения. Дорогие лимиты сразу начинают с потолка: он и так
+// ограничен пулом, а старт с половины оставлял бы одно место на класс. Потолок остальных - ниже числа
+// потоков Tomcat, чтобы лишние запросы получали 503 сразу, а не ждали в очереди коннектора
+@Component
+public class ConcurrencyLimits {
+    private final boolean enabled;
+    private final Duration retryAfter;
+    private final Map<EndpointClass, AdaptiveLimit> limits = new EnumMap<>(EndpointClass.class);
+
+    @Autowired
+    public ConcurrencyLimits(@Value("${filmorate.concurrency-limit.enabled:true}") boolean enabled,
+                             @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                             @Value("${filmorate.concurrency-limit.pool-headroom:2}") int poolHeadroom,
+                             @Value("${filmorate.concurrency-limit.expensive.max-limit:0}") int expensiveMaxLimit,
+                             @Value("${filmorate.concurrency-limit.default.max-limit:100}") int defaultMaxLimit,
+                             @Value("${filmorate.concurrency-limit.retry-after:1s}") Duration retryAfter) {
+        this(enabled, expensiveMaxLimit > 0 ? expensiveMaxLimit : expensiveCeiling(poolSize, poolHeadroom),
+                defaultMaxLimit, retryAfter);
+    }
+
+    public ConcurrencyLimits(boolean enabled, int expensiveMaxLimit, int defaultMaxLimit, Duration retryAfter) {
+        this.enabled = enabled;
+        this.retryAfter = retryAfter;
+        for (EndpointClass endpoint : EndpointClass.values()) {
+            String name = endpoint.name().toLowerCase();
+            limits.put(endpoint, endpoint.isExpensive()
+                    ? new AdaptiveLimit(name, 1, expensiveMaxLimit, expensiveMaxLimit)
+                    : new AdaptiveLimit(name, 1, defaultMaxLimit));
+        }
+    }
+
+    // соединения пула за вычетом запаса для дешёвых запросов, поровну на каждый дорогой класс
+    static int expensiveCeiling(int poolSize, int poolHeadroom) {
+        long expensiveClasses = Arrays.stream(EndpointClass.values()).filter(EndpointClass::isExpensive).count();
+        return (int) Math.max(1, (poolSize - poolHeadroom) / expensiveClasses);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public AdaptiveLimit get(EndpointClass endpoint) {
+        return limits.get(endpoint);
+    }
+
+    // значение заголовка Retry-After, целые секунды
+    public long retryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+
+    public List<AdaptiveLimit.Stats> stats() {
+        return limits.values().stream().map(AdaptiveLimit::stats).toList();
+    }
+}
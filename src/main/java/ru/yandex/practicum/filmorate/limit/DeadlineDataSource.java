@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Источник соединений, который подчиняет каждый оператор сроку текущего запроса (QueryDeadline).
+// Оператор, созданный со сроком в потоке, при выполнении получает таймаут по оставшемуся времени
+// и регистрируется в сроке, чтобы его можно было отменить, а при закрытии снимается с учёта.
+// JdbcTemplate закрывает оператор в finally, поэтому упавший оператор (ошибка БД, исключение
+// из RowMapper) не остаётся среди выполняющихся. Без срока в потоке (фоновые задачи, старт)
+// операторы не оборачиваются. Соединение берётся и возвращается через DataSourceUtils,
+// как в TracingDataSource.
+class DeadlineDataSource extends DelegatingDataSource {
+
+    DeadlineDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = obtainTargetDataSource();
+        Connection connection = DataSourceUtils.doGetConnection(target);
+        return proxy(Connection.class, (proxy, method, args) -> {
+            if (method.getName().equals("close")) {
+                DataSourceUtils.doReleaseConnection(connection, target);
+                return null;
+            }
+            Object result = invoke(connection, method, args);
+            QueryDeadline deadline = QueryDeadline.current();
+            if (result instanceof Statement statement && deadline != null) {
+                return following(statement, deadline);
+            }
+            return result;
+        });
+    }
+
+    private Statement following(Statement statement, QueryDeadline deadline) {
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return proxy(type, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // истёкший срок - SQLTimeoutException, JdbcTemplate переводит его в QueryTimeoutException
+                deadline.started((Statement) proxy);
+                return invoke(statement, method, args);
+            }
+            // прокси - ключ в QueryDeadline, сравнивается по ссылке
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        deadline.finished((Statement) proxy);
+                    }
+                default:
+                    return invoke(statement, method, args);
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(DeadlineDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.util.regex.Pattern;
+
+// Классы запросов, у каждого свой лимит одновременных запросов. Дорогие чтения разнесены по отдельным
+// классам, чтобы наплыв поиска не занимал потоки и соединения рекомендаций и наоборот, а остальные
+// чтения и записи не ждали ни за одним из них
+public enum EndpointClass {
+    SEARCH(true),
+    RECOMMENDATIONS(true),
+    // /films/popular с genreId или year: сортировка в БД, пока индекс популярности не загружен или выключен;
+    // готовый индекс отвечает на них из памяти, но класс остаётся тем же
+    POPULAR_FILTERED(true),
+    COMMON_FILMS(true),
+    READ(false),
+    WRITE(false);
+
+    private static final Pattern RECOMMENDATIONS_PATH = Pattern.compile("/users/\\d+/recommendations/?");
+
+    private final boolean expensive;
+
+    EndpointClass(boolean expensive) {
+        this.expensive = expensive;
+    }
+
+    public boolean isExpensive() {
+        return expensive;
+    }
+
+    // null - запрос не ограничивается: служебные /admin должны отвечать и под перегрузкой.
+    // Путь раскодирован, как его сопоставляет DispatcherServlet, иначе /%66ilms/search ушёл бы в READ
+    public static EndpointClass of(HttpServletRequest request) {
+        String path = UrlPathHelper.defaultInstance.getPathWithinApplication(request);
+        if (path.startsWith("/admin/") || path.equals("/admin")) {
+            return null;
+        }
+        if (!"GET".equals(request.getMethod())) {
+            return WRITE;
+        }
+        if (path.equals("/films/search") || path.equals("/films/search/")) {
+            return SEARCH;
+        }
+        if (RECOMMENDATIONS_PATH.matcher(path).matches()) {
+            return RECOMMENDATIONS;
+        }
+        if ((path.equals("/films/popular") || path.equals("/films/popular/"))
+                && (request.getParameter("genreId") != null || request.getParameter("year") != null)) {
+            return POPULAR_FILTERED;
+        }
+        if (path.equals("/films/common") || path.equals("/films/common/")) {
+            return COMMON_FILMS;
+        }
+        return READ;
+    }
+}
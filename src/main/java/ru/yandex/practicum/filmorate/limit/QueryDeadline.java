@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Срок выполнения одного HTTP-запроса и его выполняющиеся SQL-операторы. DeadlineDataSource ставит
+// каждому оператору таймаут по оставшемуся времени и регистрирует его здесь, чтобы по истечении срока
+// или при обрыве соединения клиентом выполняющиеся операторы отменялись через Statement.cancel(),
+// а новые сразу завершались ошибкой. Срок хранится в потоке запроса; HydrationExecutor передаёт его
+// своим потокам через propagate.
+public final class QueryDeadline {
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    // выполняющиеся операторы и момент их запуска
+    private final Map<Statement, Long> running = new ConcurrentHashMap<>();
+    private final AtomicLong finishedNanos = new AtomicLong();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private volatile Reason abortReason;
+    ScheduledFuture<?> expiry;
+
+    QueryDeadline(long timeoutNanos) {
+        this.deadlineNanos = System.nanoTime() + timeoutNanos;
+    }
+
+    public static QueryDeadline current() {
+        return CURRENT.get();
+    }
+
+    static void set(QueryDeadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    // задача для другого потока, которая выполнится со сроком текущего запроса
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        QueryDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return task;
+        }
+        return () -> {
+            QueryDeadline previous = CURRENT.get();
+            CURRENT.set(deadline);
+            try {
+                return task.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    // результат запроса уже никому не нужен: срок истёк или клиент отключился
+    public boolean isAborted() {
+        return abortReason != null || remainingNanos() <= 0;
+    }
+
+    public Reason getAbortReason() {
+        return abortReason;
+    }
+
+    // отменяет выполняющиеся операторы; повторный вызов ничего не делает
+    public synchronized void abort(Reason reason) {
+        if (abortReason != null) {
+            return;
+        }
+        abortReason = reason;
+        running.keySet().forEach(this::cancel);
+    }
+
+    void started(Statement statement) throws SQLException {
+        long remaining = remainingNanos();
+        if (abortReason == Reason.DISCONNECT) {
+            throw new SQLTimeoutException("Клиент отключился, запрос к БД не выполняется");
+        }
+        if (abortReason != null || remaining <= 0) {
+            throw new SQLTimeoutException("Срок выполнения запроса истёк");
+        }
+        // таймаут JDBC в целых секундах, точнее отменяет сторож по сроку
+        int seconds = (int) Math.max(1, (remaining + 999_999_999L) / 1_000_000_000L);
+        if (statement.getQueryTimeout() == 0 || statement.getQueryTimeout() > seconds) {
+            statement.setQueryTimeout(seconds);
+        }
+        running.put(statement, System.nanoTime());
+        // отмена могла пройти между проверкой и регистрацией
+        if (abortReason != null) {
+            cancel(statement);
+        }
+    }
+
+    void finished(Statement statement) {
+        Long start = running.remove(statement);
+        if (start != null) {
+            finishedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    // время операторов в БД; ещё не закрытые считаются до текущего момента
+    long dbNanos() {
+        long now = System.nanoTime();
+        return finishedNanos.get() + running.values().stream().mapToLong(start -> now - start).sum();
+    }
+
+    int cancelledStatements() {
+        return cancelled.get();
+    }
+
+    private void cancel(Statement statement) {
+        try {
+            statement.cancel();
+            cancelled.incrementAndGet();
+        } catch (SQLException e) {
+            // оператор уже закрыт
+        }
+    }
+
+    public enum Reason {
+        DEADLINE,
+        DISCONNECT
+    }
+}
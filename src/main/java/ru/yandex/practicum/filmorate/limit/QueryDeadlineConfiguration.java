@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.logging.SqlTracing;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class QueryDeadlineConfiguration {
+
+    // заменяет JdbcTemplate из автоконфигурации, настройки spring.jdbc.template.* переносятся как есть;
+    // операторы идут через трассировку SQL по запросам
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties, SqlTracing sqlTracing) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DeadlineDataSource(sqlTracing.wrap(dataSource)));
+        JdbcProperties.Template template = properties.getTemplate();
+        jdbcTemplate.setFetchSize(template.getFetchSize());
+        jdbcTemplate.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbcTemplate.setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+        }
+        return jdbcTemplate;
+    }
+}
@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.DisconnectedClientHelper;
+
+import java.io.IOException;
+
+// Заводит срок на запрос, принятый ограничителем нагрузки. Синхронный сервлет узнаёт об ушедшем
+// клиенте только при записи ответа, а потоковая выдача (/films, популярные, поиск) начинает писать,
+// когда весь SQL уже выполнен. Поэтому выполняющиеся операторы прерывает только срок; обрыв, пойманный
+// на записи, отмечается в статистике, и операторы, начатые после него, сразу завершаются ошибкой.
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class QueryDeadlineFilter extends OncePerRequestFilter {
+    private final QueryDeadlines deadlines;
+
+    public QueryDeadlineFilter(QueryDeadlines deadlines) {
+        this.deadlines = deadlines;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !deadlines.isEnabled() || EndpointClass.of(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        QueryDeadline deadline = deadlines.open(EndpointClass.of(request),
+                request.getHeader(QueryDeadlines.TIMEOUT_HEADER));
+        QueryDeadline.set(deadline);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, new DisconnectAwareResponse(response, deadline));
+            failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        } finally {
+            QueryDeadline.set(null);
+            deadlines.close(deadline, failed);
+        }
+    }
+
+    private static final class DisconnectAwareResponse extends HttpServletResponseWrapper {
+        private final QueryDeadline deadline;
+        private ServletOutputStream outputStream;
+
+        DisconnectAwareResponse(HttpServletResponse response, QueryDeadline deadline) {
+            super(response);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new DisconnectAwareStream(super.getOutputStream(), deadline);
+            }
+            return outputStream;
+        }
+    }
+
+    private static final class DisconnectAwareStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private final QueryDeadline deadline;
+
+        DisconnectAwareStream(ServletOutputStream delegate, QueryDeadline deadline) {
+            this.delegate = delegate;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                delegate.write(b);
+            } catch (IOException e) {
+                throw disconnected(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                delegate.write(b, off, len);
+            } catch (IOException e) {
+                throw disconnected(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                delegate.flush();
+            } catch (IOException e) {
+                throw disconnected(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } catch (IOException e) {
+                throw disconnected(e);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            delegate.setWriteListener(listener);
+        }
+
+        private IOException disconnected(IOException e) {
+            if (DisconnectedClientHelper.isClientDisconnectedException(e)) {
+                deadline.abort(QueryDeadline.Reason.DISCONNECT);
+            }
+            return e;
+        }
+    }
+}
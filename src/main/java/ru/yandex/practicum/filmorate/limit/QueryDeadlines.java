@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сроки запросов по классам: дорогим - expensive, остальным - default. Клиент может сократить срок
+// заголовком X-Request-Timeout (миллисекунды), например по собственному таймауту; продлить - нет.
+// Сторож отменяет операторы запроса в момент истечения срока. Работа БД по запросам, чей результат
+// выброшен (истёк срок или отключился клиент), копится в wastedMillis.
+@Slf4j
+@Component
+public class QueryDeadlines {
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final boolean enabled;
+    private final Duration expensiveTimeout;
+    private final Duration defaultTimeout;
+    private final ScheduledThreadPoolExecutor watchdog;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deadlineExceeded = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder cancelledStatements = new LongAdder();
+    private final LongAdder wastedNanos = new LongAdder();
+
+    public QueryDeadlines(@Value("${filmorate.deadline.enabled:true}") boolean enabled,
+                          @Value("${filmorate.deadline.expensive:10s}") Duration expensiveTimeout,
+                          @Value("${filmorate.deadline.default:3s}") Duration defaultTimeout) {
+        this.enabled = enabled;
+        this.expensiveTimeout = expensiveTimeout;
+        this.defaultTimeout = defaultTimeout;
+        this.watchdog = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("query-deadline").daemon().factory());
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // requestedTimeout - значение X-Request-Timeout или null
+    public QueryDeadline open(EndpointClass endpoint, String requestedTimeout) {
+        long timeout = (endpoint.isExpensive() ? expensiveTimeout : defaultTimeout).toNanos();
+        if (requestedTimeout != null) {
+            try {
+                long requested = Long.parseLong(requestedTimeout.trim());
+                timeout = Math.min(timeout, TimeUnit.MILLISECONDS.toNanos(Math.max(0, requested)));
+            } catch (NumberFormatException e) {
+                log.debug("Некорректный {}: {}", TIMEOUT_HEADER, requestedTimeout);
+            }
+        }
+        QueryDeadline deadline = new QueryDeadline(timeout);
+        deadline.expiry = watchdog.schedule(() -> deadline.abort(QueryDeadline.Reason.DEADLINE),
+                timeout, TimeUnit.NANOSECONDS);
+        requests.increment();
+        return deadline;
+    }
+
+    // failed - запрос завершился ошибкой; если срок истёк уже после последнего оператора,
+    // ответ ушёл клиенту и работа не выброшена
+    public void close(QueryDeadline deadline, boolean failed) {
+        deadline.expiry.cancel(false);
+        QueryDeadline.Reason reason = deadline.getAbortReason();
+        if (reason == null || reason == QueryDeadline.Reason.DEADLINE && !failed) {
+            return;
+        }
+        (reason == QueryDeadline.Reason.DEADLINE ? deadlineExceeded : disconnected).increment();
+        cancelledStatements.add(deadline.cancelledStatements());
+        long wasted = deadline.dbNanos();
+        wastedNanos.add(wasted);
+        log.debug("Запрос прерван ({}), выброшено {} мс работы БД", reason, TimeUnit.NANOSECONDS.toMillis(wasted));
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, expensiveTimeout.toMillis(), defaultTimeout.toMillis(), requests.sum(),
+                deadlineExceeded.sum(), disconnected.sum(), cancelledStatements.sum(),
+                TimeUnit.NANOSECONDS.toMillis(wastedNanos.sum()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    public record Stats(boolean enabled, long expensiveTimeoutMillis, long defaultTimeoutMillis, long requests,
+                        long deadlineExceeded, long disconnected, long cancelledStatements, long wastedMillis) {
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Precorrelation;
+
+// Пишет отобранные запросы на уровне INFO в логгер Logbook (его вывод асинхронный, см. logback-spring.xml).
+// Стандартный писатель Logbook пишет на TRACE, из-за чего весь пакет приходилось держать на TRACE
+public class RequestLogWriter implements HttpLogWriter {
+    private static final Logger log = LoggerFactory.getLogger(Logbook.class);
+
+    @Override
+    public boolean isActive() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, String request) {
+        log.info(request);
+    }
+
+    @Override
+    public void write(Correlation correlation, String response) {
+        log.info(response);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.HttpRequest;
+
+import java.util.function.Predicate;
+
+@Configuration
+public class RequestLoggingConfiguration {
+
+    // Logbook подхватывает бин с этим именем вместо своего и сам добавляет к нему
+    // исключения из logbook.predicate.exclude
+    @Bean
+    public Predicate<HttpRequest> requestCondition(RequestLoggingSampler sampler) {
+        return request -> sampler.shouldLog();
+    }
+
+    @Bean
+    public HttpLogWriter requestLogWriter() {
+        return new RequestLogWriter();
+    }
+}
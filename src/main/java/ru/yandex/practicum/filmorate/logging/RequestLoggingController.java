@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/request-logging")
+@RequiredArgsConstructor
+public class RequestLoggingController {
+    private final RequestLoggingSampler sampler;
+
+    @GetMapping
+    public Map<String, Object> get() {
+        return Map.of("enabled", sampler.isEnabled(), "sampleRate", sampler.getSampleRate());
+    }
+
+    @PutMapping
+    public Map<String, Object> update(@RequestParam(required = false) Boolean enabled,
+                                      @RequestParam(required = false) Double sampleRate) {
+        sampler.update(enabled, sampleRate);
+        return get();
+    }
+}
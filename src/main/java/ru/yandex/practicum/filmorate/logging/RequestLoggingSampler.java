@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Решает, пишет ли Logbook конкретный запрос. Неотобранные запросы Logbook не буферизует
+// и не форматирует вовсе. Оба параметра меняются на лету через /admin/request-logging.
+@Slf4j
+@Component
+public class RequestLoggingSampler {
+    private volatile boolean enabled;
+    private volatile double sampleRate;
+
+    public RequestLoggingSampler(@Value("${filmorate.request-logging.enabled:true}") boolean enabled,
+                                 @Value("${filmorate.request-logging.sample-rate:0.1}") double sampleRate) {
+        this.enabled = enabled;
+        this.sampleRate = clamp(sampleRate);
+    }
+
+    public boolean shouldLog() {
+        if (!enabled) {
+            return false;
+        }
+        double rate = sampleRate;
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void update(Boolean enabled, Double sampleRate) {
+        if (enabled != null) {
+            this.enabled = enabled;
+        }
+        if (sampleRate != null) {
+            this.sampleRate = clamp(sampleRate);
+        }
+        log.info("Логирование запросов: enabled={}, sampleRate={}", this.enabled, this.sampleRate);
+    }
+
+    private static double clamp(double rate) {
+        return Math.max(0.0, Math.min(1.0, rate));
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// SQL одного HTTP-запроса (или вызова, обёрнутого в record): число операторов, их суммарное время
+// в БД, прочитанные строки (если TracingDataSource их считает) и сколько раз выполнялся каждый шаблон.
+// Шаблон - текст оператора с нормализованными пробелами, а списки (?, ?, ...) любой длины сводятся
+// к одному, чтобы загрузка пачками не выглядела разными операторами.
+// Как и QueryDeadline, хранится в потоке запроса и передаётся потокам HydrationExecutor.
+public final class SqlTrace {
+    private static final ThreadLocal<SqlTrace> CURRENT = new ThreadLocal<>();
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    // шаблоны по исходному тексту: операторы - в основном константы, нормализуются один раз
+    private static final int MAX_TEMPLATES = 1024;
+    private static final Map<String, String> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final Map<String, AtomicInteger> repeats = new ConcurrentHashMap<>();
+
+    public static SqlTrace current() {
+        return CURRENT.get();
+    }
+
+    static void set(SqlTrace trace) {
+        if (trace == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace);
+        }
+    }
+
+    // задача для другого потока, операторы которой засчитываются текущему запросу
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        SqlTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+        return () -> {
+            SqlTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    // выполняет action со своей трассировкой, например чтобы проверить число запросов вызова сервиса
+    public static SqlTrace record(Runnable action) {
+        SqlTrace trace = new SqlTrace();
+        SqlTrace previous = CURRENT.get();
+        CURRENT.set(trace);
+        try {
+            action.run();
+        } finally {
+            set(previous);
+        }
+        return trace;
+    }
+
+    void record(String sql, long elapsedNanos) {
+        statements.incrementAndGet();
+        nanos.addAndGet(elapsedNanos);
+        repeats.computeIfAbsent(template(sql), key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    void recordRow() {
+        rows.incrementAndGet();
+    }
+
+    public int getStatements() {
+        return statements.get();
+    }
+
+    public long getNanos() {
+        return nanos.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public int getTemplates() {
+        return repeats.size();
+    }
+
+    // число выполнений по шаблонам
+    public Map<String, Integer> repeats() {
+        Map<String, Integer> snapshot = new TreeMap<>();
+        repeats.forEach((template, count) -> snapshot.put(template, count.get()));
+        return snapshot;
+    }
+
+    // самый частый шаблон и число его выполнений; null - операторов не было
+    public Map.Entry<String, Integer> mostRepeated() {
+        return repeats.entrySet().stream()
+                .max(Comparator.comparingInt(entry -> entry.getValue().get()))
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().get()))
+                .orElse(null);
+    }
+
+    static String template(String sql) {
+        String template = TEMPLATES.get(sql);
+        if (template == null) {
+            template = IN_LIST.matcher(SPACES.matcher(sql.trim()).replaceAll(" ")).replaceAll("(?...)");
+            if (TEMPLATES.size() >= MAX_TEMPLATES) {
+                TEMPLATES.clear();
+            }
+            TEMPLATES.put(sql, template);
+        }
+        return template;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/admin/sql-trace")
+@RequiredArgsConstructor
+public class SqlTraceController {
+    private final SqlTracing tracing;
+
+    @GetMapping
+    public SqlTracing.Stats get() {
+        return tracing.stats();
+    }
+
+    @PutMapping
+    public SqlTracing.Stats update(@RequestParam(required = false) Boolean headers,
+                                   @RequestParam(required = false) Integer repeatThreshold) {
+        tracing.update(headers, repeatThreshold);
+        return get();
+    }
+}
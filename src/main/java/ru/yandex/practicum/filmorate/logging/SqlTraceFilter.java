@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Заводит SqlTrace на запрос. В режиме заголовков ответ буферизуется, чтобы счётчики, известные
+// только в конце, попали в заголовки и у потоковой выдачи
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 3)
+public class SqlTraceFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+    public static final String TIME_HEADER = "X-Sql-Time-Ms";
+    public static final String ROWS_HEADER = "X-Sql-Rows";
+    public static final String TEMPLATES_HEADER = "X-Sql-Templates";
+    public static final String MAX_REPEATS_HEADER = "X-Sql-Max-Repeats";
+    public static final String REPEATED_HEADER = "X-Sql-Repeated";
+    private static final int MAX_SQL_LENGTH = 200;
+
+    private final SqlTracing tracing;
+
+    public SqlTraceFilter(SqlTracing tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !tracing.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        SqlTrace trace = new SqlTrace();
+        ContentCachingResponseWrapper buffered = tracing.isHeaders() ? new ContentCachingResponseWrapper(response) : null;
+        SqlTrace.set(trace);
+        try {
+            chain.doFilter(request, buffered != null ? buffered : response);
+        } finally {
+            SqlTrace.set(null);
+            tracing.finish(request, trace);
+        }
+        if (buffered != null) {
+            buffered.setHeader(STATEMENTS_HEADER, String.valueOf(trace.getStatements()));
+            buffered.setHeader(TIME_HEADER, String.format(Locale.ROOT, "%.3f",
+                    trace.getNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+            if (tracing.isCountRows()) {
+                buffered.setHeader(ROWS_HEADER, String.valueOf(trace.getRows()));
+            }
+            buffered.setHeader(TEMPLATES_HEADER, String.valueOf(trace.getTemplates()));
+            Map.Entry<String, Integer> top = trace.mostRepeated();
+            if (top != null) {
+                buffered.setHeader(MAX_REPEATS_HEADER, String.valueOf(top.getValue()));
+            }
+            if (top != null && top.getValue() > 1) {
+                String sql = top.getKey();
+                buffered.setHeader(REPEATED_HEADER, sql.length() > MAX_SQL_LENGTH
+                        ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql);
+            }
+            buffered.copyBodyToResponse();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Настройки трассировки SQL по запросам. Заголовки X-Sql-* включаются на лету через /admin/sql-trace:
+// для них ответ буферизуется, поэтому это режим отладки. Запрос, в котором один шаблон выполнился
+// не меньше repeatThreshold раз, пишется в лог предупреждением - это почти всегда N+1.
+@Slf4j
+@Component
+public class SqlTracing {
+    private final boolean enabled;
+    private final boolean countRows;
+    private volatile boolean headers;
+    private volatile int repeatThreshold;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder warnings = new LongAdder();
+
+    public SqlTracing(@Value("${filmorate.sql-trace.enabled:true}") boolean enabled,
+                      @Value("${filmorate.sql-trace.headers:false}") boolean headers,
+                      @Value("${filmorate.sql-trace.repeat-threshold:10}") int repeatThreshold,
+                      @Value("${filmorate.sql-trace.count-rows:false}") boolean countRows) {
+        this.enabled = enabled;
+        this.countRows = countRows;
+        this.headers = headers;
+        this.repeatThreshold = Math.max(2, repeatThreshold);
+    }
+
+    // DataSource для JdbcTemplate приложения
+    public DataSource wrap(DataSource dataSource) {
+        return enabled ? new TracingDataSource(dataSource, countRows) : dataSource;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // строки считаются через прокси ResultSet на каждый next(), поэтому по умолчанию выключено
+    public boolean isCountRows() {
+        return countRows;
+    }
+
+    public boolean isHeaders() {
+        return headers;
+    }
+
+    public int getRepeatThreshold() {
+        return repeatThreshold;
+    }
+
+    public void update(Boolean headers, Integer repeatThreshold) {
+        if (headers != null) {
+            this.headers = headers;
+        }
+        if (repeatThreshold != null) {
+            this.repeatThreshold = Math.max(2, repeatThreshold);
+        }
+        log.info("Трассировка SQL: headers={}, repeatThreshold={}", this.headers, this.repeatThreshold);
+    }
+
+    void finish(HttpServletRequest request, SqlTrace trace) {
+        requests.increment();
+        statements.add(trace.getStatements());
+        Map.Entry<String, Integer> top = trace.mostRepeated();
+        if (top != null && top.getValue() >= repeatThreshold) {
+            warnings.increment();
+            log.warn("Вероятный N+1: {} {} выполнил {} операторов, из них {} раз: {}", request.getMethod(),
+                    request.getRequestURI(), trace.getStatements(), top.getValue(), top.getKey());
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(enabled, headers, countRows, repeatThreshold, requests.sum(), statements.sum(),
+                warnings.sum());
+    }
+
+    public record Stats(boolean enabled, boolean headers, boolean countRows, int repeatThreshold, long requests,
+                        long statements, long warnings) {
+    }
+}
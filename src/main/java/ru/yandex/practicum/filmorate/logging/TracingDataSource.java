@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Источник соединений для JdbcTemplate: каждый выполненный оператор засчитывается в SqlTrace
+// текущего запроса. Соединения и операторы оборачиваются динамическими прокси; ResultSet
+// оборачивается, только если нужно считать строки. Операторы, созданные вне запроса (старт,
+// фоновые задачи), не оборачиваются. Соединение берётся и возвращается через DataSourceUtils,
+// поэтому в транзакции, открытой на исходном DataSource (например, в тестах), используется её соединение.
+public class TracingDataSource extends DelegatingDataSource {
+    private final boolean countRows;
+
+    public TracingDataSource(DataSource target, boolean countRows) {
+        super(target);
+        this.countRows = countRows;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = obtainTargetDataSource();
+        Connection connection = DataSourceUtils.doGetConnection(target);
+        return proxy(Connection.class, (proxy, method, args) -> {
+            if (method.getName().equals("close")) {
+                DataSourceUtils.doReleaseConnection(connection, target);
+                return null;
+            }
+            Object result = invoke(connection, method, args);
+            // createStatement, prepareStatement, prepareCall; у двух последних первый аргумент - SQL
+            if (result instanceof Statement statement && SqlTrace.current() != null) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                return tracing(statement, sql);
+            }
+            return result;
+        });
+    }
+
+    private Statement tracing(Statement statement, String preparedSql) {
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return proxy(type, (proxy, method, args) -> {
+            SqlTrace trace = SqlTrace.current();
+            if (trace == null) {
+                return invoke(statement, method, args);
+            }
+            if (!method.getName().startsWith("execute")) {
+                return rows(invoke(statement, method, args), trace);
+            }
+            String sql = preparedSql;
+            if (sql == null) {
+                // Statement.execute(sql); executeBatch после addBatch(sql) текста не знает
+                sql = args != null && args.length > 0 && args[0] instanceof String text ? text : "<batch>";
+            }
+            long start = System.nanoTime();
+            try {
+                return rows(invoke(statement, method, args), trace);
+            } finally {
+                trace.record(sql, System.nanoTime() - start);
+            }
+        });
+    }
+
+    // executeQuery и getResultSet: строки, прочитанные через next(), засчитываются запросу
+    private Object rows(Object result, SqlTrace trace) {
+        if (!countRows || !(result instanceof ResultSet resultSet)) {
+            return result;
+        }
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            Object value = invoke(resultSet, method, args);
+            if (Boolean.TRUE.equals(value) && method.getName().equals("next")) {
+                trace.recordRow();
+            }
+            return value;
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(TracingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
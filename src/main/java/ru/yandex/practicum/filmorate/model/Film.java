@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -17,7 +18,11 @@ public class Film {
     private LocalDate releaseDate;
     private int duration;
     private Mpa mpa;
+    // null - связь не загружалась (см. FilmFields)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<Genre> genres = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Integer> likes = new HashSet<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Director> directors = new LinkedHashSet<>();
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+import java.util.Set;
+
+// Связи фильма, которые хранилище загружает. Основные поля и mpa есть всегда;
+// незагруженная связь остаётся null и в ответ не попадает
+public record FilmFields(boolean genres, boolean likes, boolean directors) {
+    public static final FilmFields FULL = new FilmFields(true, true, true);
+    // спискам обычно хватает жанров, а лайки - самая тяжёлая связь
+    public static final FilmFields SUMMARY = new FilmFields(true, false, false);
+    // одна строка фильма, например для проверки, что он есть
+    public static final FilmFields NONE = new FilmFields(false, false, false);
+
+    private static final Set<String> BASE = Set.of("id", "name", "description", "releaseDate", "duration", "mpa");
+    private static final Set<String> RELATIONS = Set.of("genres", "likes", "directors");
+
+    public static FilmFields of(String view, List<String> fields) {
+        Set<String> relations = Projection.relations(view, fields, BASE, RELATIONS, Set.of("genres"));
+        return new FilmFields(relations.contains("genres"), relations.contains("likes"),
+                relations.contains("directors"));
+    }
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Разбор ?view=summary|full и ?fields=... в набор связей, которые нужно загрузить.
+// Без параметров - full, как было до их появления
+final class Projection {
+    private Projection() {
+    }
+
+    static Set<String> relations(String view, List<String> fields, Set<String> base, Set<String> all,
+                                 Set<String> summary) {
+        if (view != null && fields != null) {
+            throw new ValidationException("Укажите либо view, либо fields.");
+        }
+        if (fields != null) {
+            Set<String> selected = new HashSet<>();
+            for (String field : fields) {
+                String name = field.trim();
+                if (all.contains(name)) {
+                    selected.add(name);
+                } else if (!base.contains(name) && !name.isEmpty()) {
+                    throw new ValidationException("Неизвестное поле: " + name);
+                }
+            }
+            return selected;
+        }
+        if (view == null || "full".equalsIgnoreCase(view)) {
+            return all;
+        }
+        if ("summary".equalsIgnoreCase(view)) {
+            return summary;
+        }
+        throw new ValidationException("Параметр view должен быть 'summary' или 'full'.");
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -17,5 +18,7 @@ public class User {
     private String login;
     private String name;
     private LocalDate birthday;
+    // null - друзья не загружались (см. UserFields)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Integer> friends = new HashSet<>();
 }
\ No newline at end of file
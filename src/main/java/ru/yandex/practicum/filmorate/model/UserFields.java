@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+import java.util.Set;
+
+// Загружать ли друзей пользователя; без них friends остаётся null и в ответ не попадает
+public record UserFields(boolean friends) {
+    public static final UserFields FULL = new UserFields(true);
+    public static final UserFields SUMMARY = new UserFields(false);
+
+    private static final Set<String> BASE = Set.of("id", "email", "login", "name", "birthday");
+    private static final Set<String> RELATIONS = Set.of("friends");
+
+    public static UserFields of(String view, List<String> fields) {
+        return Projection.relations(view, fields, BASE, RELATIONS, Set.of()).contains("friends") ? FULL : SUMMARY;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.JacksonFeatureSet;
+import com.fasterxml.jackson.core.StreamWriteCapability;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Пишет фильмы из хранилища прямо в JsonGenerator в том же виде, что и Jackson для Film:
+// незагруженные связи (null) пропускаются.
+// Имена полей закодированы заранее, а mpa и жанры, повторяющиеся из фильма в фильм,
+// сериализуются один раз за ответ и дальше вставляются готовым фрагментом.
+public class FilmJsonWriter implements FilmSink {
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString DESCRIPTION = new SerializedString("description");
+    private static final SerializedString RELEASE_DATE = new SerializedString("releaseDate");
+    private static final SerializedString DURATION = new SerializedString("duration");
+    private static final SerializedString MPA = new SerializedString("mpa");
+    private static final SerializedString GENRES = new SerializedString("genres");
+    private static final SerializedString LIKES = new SerializedString("likes");
+    private static final SerializedString DIRECTORS = new SerializedString("directors");
+
+    private final JsonGenerator generator;
+    // готовые фрагменты годятся только для текстового JSON, бинарные форматы пишутся по полям
+    private final boolean rawFragments;
+    private final Map<Integer, Fragment> mpaFragments = new HashMap<>();
+    private final Map<Integer, Fragment> genreFragments = new HashMap<>();
+
+    public FilmJsonWriter(JsonGenerator generator) {
+        this.generator = generator;
+        JacksonFeatureSet<StreamWriteCapability> capabilities = generator.getWriteCapabilities();
+        this.rawFragments = !capabilities.isEnabled(StreamWriteCapability.CAN_WRITE_BINARY_NATIVELY);
+    }
+
+    @Override
+    public void film(int id, String name, String description, LocalDate releaseDate, int duration, Mpa mpa,
+                     Collection<Genre> genres, Collection<Integer> likes, Collection<Director> directors) {
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            generator.writeNumber(id);
+            generator.writeFieldName(NAME);
+            generator.writeString(name);
+            generator.writeFieldName(DESCRIPTION);
+            generator.writeString(description);
+            generator.writeFieldName(RELEASE_DATE);
+            if (releaseDate == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(releaseDate.toString());
+            }
+            generator.writeFieldName(DURATION);
+            generator.writeNumber(duration);
+
+            generator.writeFieldName(MPA);
+            if (mpa == null) {
+                generator.writeNull();
+            } else {
+                writeNamed(mpaFragments, mpa.getId(), mpa.getName());
+            }
+
+            if (genres != null) {
+                generator.writeFieldName(GENRES);
+                generator.writeStartArray();
+                for (Genre genre : genres) {
+                    writeNamed(genreFragments, genre.getId(), genre.getName());
+                }
+                generator.writeEndArray();
+            }
+
+            if (likes != null) {
+                generator.writeFieldName(LIKES);
+                generator.writeStartArray();
+                for (Integer userId : likes) {
+                    generator.writeNumber(userId);
+                }
+                generator.writeEndArray();
+            }
+
+            if (directors != null) {
+                generator.writeFieldName(DIRECTORS);
+                generator.writeStartArray();
+                for (Director director : directors) {
+                    writeObject(director.getId(), director.getName());
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeNamed(Map<Integer, Fragment> fragments, int id, String name) throws IOException {
+        if (!rawFragments) {
+            writeObject(id, name);
+            return;
+        }
+        Fragment fragment = fragments.get(id);
+        if (fragment == null || !Objects.equals(fragment.name(), name)) {
+            fragment = new Fragment(name, new SerializedString(toJson(id, name)));
+            fragments.put(id, fragment);
+        }
+        generator.writeRawValue(fragment.json());
+    }
+
+    private void writeObject(int id, String name) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ID);
+        generator.writeNumber(id);
+        generator.writeFieldName(NAME);
+        generator.writeString(name);
+        generator.writeEndObject();
+    }
+
+    private static String toJson(int id, String name) {
+        if (name == null) {
+            return "{\"id\":" + id + ",\"name\":null}";
+        }
+        return "{\"id\":" + id + ",\"name\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(name)) + "\"}";
+    }
+
+    private record Fragment(String name, SerializableString json) {
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.serialization;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.film.FilmSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// Потоковая выдача списка фильмов: массив пишется в тело ответа по мере чтения из хранилища,
+// без промежуточного List<Film> и дерева Jackson. Формат (JSON, CBOR, Smile) выбирается по Accept.
+// Ответ синхронный, поэтому фильтры ETag и Logbook видят тело как обычно.
+@Component
+public class FilmListStreamer {
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final SmileFactory smileFactory = new SmileFactory();
+
+    public FilmListStreamer(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public void write(HttpServletRequest request, HttpServletResponse response,
+                      Consumer<FilmSink> source) throws IOException {
+        WireFormat format = WireFormat.fromAccept(request.getHeader(HttpHeaders.ACCEPT));
+        response.setContentType(format.getMediaType().toString());
+        if (format == WireFormat.JSON) {
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        if (!response.containsHeader(HttpHeaders.VARY)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+
+        JsonGenerator generator = factoryFor(format).createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+        // при ошибке генератор не закрываем: незаписанный буфер выбрасывается,
+        // и обработчик исключений ещё может отдать обычный ответ об ошибке
+        generator.writeStartArray();
+        source.accept(new FilmJsonWriter(generator));
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    private JsonFactory factoryFor(WireFormat format) {
+        return switch (format) {
+            case JSON -> jsonFactory;
+            case CBOR -> cborFactory;
+            case SMILE -> smileFactory;
+        };
+    }
+}
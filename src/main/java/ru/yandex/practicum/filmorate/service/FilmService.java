@@ -3,24 +3,36 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.SingleFlight;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.DAO.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.DAO.MpaDbStorage;
 import ru.yandex.practicum.filmorate.storage.event.EventStorage;
-import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmBuffer;
+import ru.yandex.practicum.filmorate.storage.film.FilmSink;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class FilmService {
+    // предел id в одном запросе GET /films?ids=
+    public static final int MAX_IDS = 100;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final MpaDbStorage mpaDbStorage;
@@ -28,6 +40,19 @@ public class FilmService {
     private final DirectorService directorService;
     private static final LocalDate CINEMA_BIRTHDAY = LocalDate.of(1895, 12, 28);
     private final EventStorage eventStorage;
+    private final LikeAnalytics likeAnalytics;
+    private final SingleFlight singleFlight;
+
+    public FilmService(FilmStorage filmStorage,
+                       UserStorage userStorage,
+                       MpaDbStorage mpaDbStorage,
+                       GenreDbStorage genreDbStorage,
+                       DirectorService directorService,
+                       EventStorage eventStorage,
+                       LikeAnalytics likeAnalytics) {
+        this(filmStorage, userStorage, mpaDbStorage, genreDbStorage, directorService, eventStorage, likeAnalytics,
+                SingleFlight.disabled());
+    }
 
     @Autowired
     public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
@@ -35,13 +60,17 @@ public class FilmService {
                        MpaDbStorage mpaDbStorage,
                        GenreDbStorage genreDbStorage,
                        DirectorService directorService,
-                       EventStorage eventStorage) {
+                       EventStorage eventStorage,
+                       LikeAnalytics likeAnalytics,
+                       SingleFlight singleFlight) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.mpaDbStorage = mpaDbStorage;
         this.genreDbStorage = genreDbStorage;
         this.directorService = directorService;
         this.eventStorage = eventStorage;
+        this.likeAnalytics = likeAnalytics;
+        this.singleFlight = singleFlight;
     }
 
     public Film addFilm(Film film) {
@@ -53,7 +82,7 @@ public class FilmService {
     }
 
     public Film updateFilm(Film film) {
-        Film existingFilm = filmStorage.getFilmById(film.getId());
+        Film existingFilm = filmStorage.getFilmById(film.getId(), FilmFields.NONE);
         if (existingFilm == null) {
             throw new NotFoundException("Фильм с id " + film.getId() + " не найден.");
         }
@@ -64,45 +93,78 @@ public class FilmService {
         return filmStorage.updateFilm(film);
     }
 
-    public Film getFilm(int id) {
-        Film film = filmStorage.getFilmById(id);
+    public Film getFilm(int id, FilmFields fields) {
+        Film film = filmStorage.getFilmById(id, fields);
         if (film == null) {
             throw new NotFoundException("Фильм с id " + id + " не найден.");
         }
         return film;
     }
 
+    // повторные id отдаются один раз
+    public BatchResult<Film> getFilmsByIds(List<Integer> ids, FilmFields fields) {
+        List<Integer> unique = ids.stream().distinct().toList();
+        if (unique.size() > MAX_IDS) {
+            throw new ValidationException("Не больше " + MAX_IDS + " id в одном запросе.");
+        }
+        List<Film> films = filmStorage.getFilmsByIds(unique, fields);
+        List<Integer> missing = new ArrayList<>(unique);
+        films.forEach(film -> missing.remove(Integer.valueOf(film.getId())));
+        return new BatchResult<>(films, missing);
+    }
+
     public List<Film> getAllFilms() {
         return filmStorage.getAllFilms();
     }
 
+    public void streamAllFilms(FilmFields fields, FilmSink sink) {
+        filmStorage.streamAllFilms(fields, sink);
+    }
+
     public void addLike(int filmId, int userId) {
-        Film film = filmStorage.getFilmById(filmId);
+        // для проверки существования связи не нужны
+        Film film = filmStorage.getFilmById(filmId, FilmFields.NONE);
         if (film == null) {
             throw new NotFoundException("Фильм с id " + filmId + " не найден.");
         }
-        if (userStorage.getUserById(userId) == null) {
+        if (userStorage.getUserById(userId, UserFields.SUMMARY) == null) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден.");
         }
-        filmStorage.addLike(filmId, userId);
+        // повторный лайк того же пользователя аналитику не накручивает
+        if (filmStorage.addLike(filmId, userId)) {
+            likeAnalytics.likeAdded(filmId, userId);
+        }
         // Логируем событие добавления лайка
         eventStorage.addEvent(userId, EventType.LIKE, Operation.ADD, filmId);
     }
 
     public void removeLike(int filmId, int userId) {
-        Film film = filmStorage.getFilmById(filmId);
+        Film film = filmStorage.getFilmById(filmId, FilmFields.NONE);
         if (film == null) {
             throw new NotFoundException("Фильм с id " + filmId + " не найден.");
         }
-        if (userStorage.getUserById(userId) == null) {
+        if (userStorage.getUserById(userId, UserFields.SUMMARY) == null) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден.");
         }
-        filmStorage.removeLike(filmId, userId);
+        if (filmStorage.removeLike(filmId, userId)) {
+            likeAnalytics.likeRemoved(filmId, userId);
+        }
         // Логируем событие удаления лайка
         eventStorage.addEvent(userId, EventType.LIKE, Operation.REMOVE, filmId);
     }
 
     public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        validatePopularParams(count, genreId, year);
+        return filmStorage.getPopularFilms(count, genreId, year);
+    }
+
+    public void streamPopularFilms(int count, Integer genreId, Integer year, FilmFields fields, FilmSink sink) {
+        validatePopularParams(count, genreId, year);
+        streamShared("films.popular", Arrays.asList(count, genreId, year, fields),
+                buffer -> filmStorage.streamPopularFilms(count, genreId, year, fields, buffer), sink);
+    }
+
+    private void validatePopularParams(int count, Integer genreId, Integer year) {
         if (count <= 0) {
             throw new ValidationException("Количество фильмов должно быть положительным числом.");
         }
@@ -112,16 +174,25 @@ public class FilmService {
         if (year != null && year < CINEMA_BIRTHDAY.getYear()) {
             throw new ValidationException("Год не может быть меньше 1895");
         }
-        return filmStorage.getPopularFilms(count, genreId, year);
     }
 
-    public List<Film> getFilmsByDirectorSorted(int directorId, String sortBy) {
+    // фильмы с наибольшим счётом лайков, затухающим со временем
+    public List<Film> getTrendingFilms(int count, FilmFields fields) {
+        if (count <= 0) {
+            throw new ValidationException("Количество фильмов должно быть положительным числом.");
+        }
+        return filmStorage.getTrendingFilms(count, fields);
+    }
+
+    public List<Film> getFilmsByDirectorSorted(int directorId, String sortBy, FilmFields fields) {
         if (!"likes".equalsIgnoreCase(sortBy) && !"year".equalsIgnoreCase(sortBy)) {
             throw new ValidationException("Параметр sortBy должен быть 'likes' или 'year'.");
         }
         directorService.checkExists(directorId);
 
-        return ((FilmDbStorage) filmStorage).getFilmsByDirectorSorted(directorId, sortBy);
+        String order = sortBy.toLowerCase(Locale.ROOT);
+        return singleFlight.run("films.director", Arrays.asList(directorId, order, fields),
+                () -> filmStorage.getFilmsByDirectorSorted(directorId, order, fields), Entity.FILMS);
     }
 
     private void validateMpa(Film film) {
@@ -169,6 +240,29 @@ public class FilmService {
     }
 
     public List<Film> getFilmsByFilter(String query, List<String> by) {
+        validateFilterParams(query, by);
+        return filmStorage.getFilmsByFilter(query, by);
+    }
+
+    public void streamFilmsByFilter(String query, List<String> by, FilmFields fields, FilmSink sink) {
+        validateFilterParams(query, by);
+        // поиск регистронезависимый, а порядок и повторы в by не важны
+        String normalizedQuery = query == null ? null : query.toLowerCase(Locale.ROOT);
+        List<String> normalizedBy = by.stream().distinct().sorted().toList();
+        streamShared("films.search", Arrays.asList(normalizedQuery, normalizedBy, fields),
+                buffer -> filmStorage.streamFilmsByFilter(normalizedQuery, normalizedBy, fields, buffer), sink);
+    }
+
+    // одинаковые одновременные выборки читаются из БД один раз и отдаются каждому из записи
+    private void streamShared(String operation, List<?> args, Consumer<FilmSink> source, FilmSink sink) {
+        if (!singleFlight.isEnabled()) {
+            source.accept(sink);
+            return;
+        }
+        singleFlight.run(operation, args, () -> FilmBuffer.of(source), Entity.FILMS).replay(sink);
+    }
+
+    private void validateFilterParams(String query, List<String> by) {
         Set<String> allowedParametersForSearch = Set.of("director", "title");
 
         if ((query != null && by.isEmpty()) || (query == null && !by.isEmpty())) {
@@ -177,8 +271,6 @@ public class FilmService {
         if (!allowedParametersForSearch.containsAll(by)) {
             throw new ValidationException("Неверные параметры запроса.");
         }
-
-        return filmStorage.getFilmsByFilter(query, by);
     }
 
     private void validateGenre(int genreId) {
@@ -188,12 +280,15 @@ public class FilmService {
     }
 
     //По задаче рекомендации
-    public List<Film> getRecommendedFilms(int userId) {
-        if (userStorage.getUserById(userId) == null) {
+    public List<Film> getRecommendedFilms(int userId, FilmFields fields) {
+        if (userStorage.getUserById(userId, UserFields.SUMMARY) == null) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден.");
         }
         try {
-            return filmStorage.getRecommendedFilms(userId);
+            return singleFlight.run("films.recommended", Arrays.asList(userId, fields),
+                    () -> filmStorage.getRecommendedFilms(userId, fields), Entity.FILMS);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Ошибка при получении рекомендаций для пользователя с id {}: {}", userId, e.getMessage(), e);
             throw new RuntimeException("Ошбка при получении рекомендаций", e);
@@ -202,7 +297,7 @@ public class FilmService {
 
     //по задаче удаление
     public void deleteFilm(int id) {
-        Film film = filmStorage.getFilmById(id);
+        Film film = filmStorage.getFilmById(id, FilmFields.NONE);
         if (film == null) {
             throw new NotFoundException("Фильм с id " + id + " не найден.");
         }
@@ -210,7 +305,8 @@ public class FilmService {
     }
 
     // по "Общим фильмам"
-    public List<Film> getCommonFilms(int userId, int friendId) {
-        return filmStorage.getCommonFilms(userId, friendId);
+    public List<Film> getCommonFilms(int userId, int friendId, FilmFields fields) {
+        return singleFlight.run("films.common", Arrays.asList(userId, friendId, fields),
+                () -> filmStorage.getCommonFilms(userId, friendId, fields), Entity.FILMS);
     }
 }
\ No newline at end of file
@@ -2,12 +2,15 @@ package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.SingleFlight;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.event.EventStorage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
+import java.util.Arrays;
 import java.util.List;
 
 @Service
@@ -15,11 +18,13 @@ public class ReviewService {
 
     private final ReviewStorage reviewStorage;
     private final EventStorage eventStorage;
+    private final SingleFlight singleFlight;
 
     @Autowired
-    public ReviewService(ReviewStorage reviewStorage, EventStorage eventStorage) {
+    public ReviewService(ReviewStorage reviewStorage, EventStorage eventStorage, SingleFlight singleFlight) {
         this.reviewStorage = reviewStorage;
         this.eventStorage = eventStorage;
+        this.singleFlight = singleFlight;
     }
 
     public Review addReview(Review review) {
@@ -51,7 +56,8 @@ public class ReviewService {
     }
 
     public List<Review> getReviews(Long filmId, int count) {
-        return reviewStorage.getReviews(filmId, count);
+        return singleFlight.run("reviews", Arrays.asList(filmId, count),
+                () -> reviewStorage.getReviews(filmId, count), Entity.REVIEWS);
     }
 
     public void like(long reviewId, long userId) {
@@ -1,29 +1,46 @@
 package ru.yandex.practicum.filmorate.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.SingleFlight;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
 import ru.yandex.practicum.filmorate.storage.event.EventStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class UserService {
+    // предел id в одном запросе GET /users?ids=
+    public static final int MAX_IDS = 100;
+
     private final UserStorage userStorage;
     private final EventStorage eventStorage;
+    private final SingleFlight singleFlight;
+
+    public UserService(UserStorage userStorage, EventStorage eventStorage) {
+        this(userStorage, eventStorage, SingleFlight.disabled());
+    }
 
+    @Autowired
     public UserService(@Qualifier("userDbStorage") UserStorage userStorage,
-                       EventStorage eventStorage) {
+                       EventStorage eventStorage,
+                       SingleFlight singleFlight) {
         this.userStorage = userStorage;
         this.eventStorage = eventStorage;
+        this.singleFlight = singleFlight;
     }
 
     public User addUser(User user) {
@@ -37,17 +54,29 @@ public class UserService {
         return userStorage.updateUser(user);
     }
 
-    public User getUser(int id) {
-        User user = userStorage.getUserById(id);
+    public User getUser(int id, UserFields fields) {
+        User user = userStorage.getUserById(id, fields);
         if (user == null) {
             throw new NotFoundException("Пользователь с id " + id + " не найден.");
         }
         return user;
     }
 
-    public List<User> getAllUsers() {
+    // повторные id отдаются один раз
+    public BatchResult<User> getUsersByIds(List<Integer> ids, UserFields fields) {
+        List<Integer> unique = ids.stream().distinct().toList();
+        if (unique.size() > MAX_IDS) {
+            throw new ValidationException("Не больше " + MAX_IDS + " id в одном запросе.");
+        }
+        List<User> users = userStorage.getUsersByIds(unique, fields);
+        List<Integer> missing = new ArrayList<>(unique);
+        users.forEach(user -> missing.remove(Integer.valueOf(user.getId())));
+        return new BatchResult<>(users, missing);
+    }
 
-        return userStorage.getAllUsers();
+    public List<User> getAllUsers(UserFields fields) {
+
+        return userStorage.getAllUsers(fields);
     }
 
     public void addFriend(int id, int friendId) {
@@ -66,18 +95,20 @@ public class UserService {
         eventStorage.addEvent(id, EventType.FRIEND, Operation.REMOVE, friendId);
     }
 
-    public List<User> getFriends(int id) {
-        User user = validateUserExists(id);
-        User userWithFriends = userStorage.getUserById(id);
-        return userWithFriends.getFriends().stream()
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+    // fields относится к друзьям в ответе; у самого пользователя друзья нужны всегда
+    public List<User> getFriends(int id, UserFields fields) {
+        User user = getUserWithFriends(id);
+        return userStorage.getUsersByIds(new ArrayList<>(user.getFriends()), fields);
     }
 
-    public List<User> getCommonFriends(int id, int otherId) {
+    public List<User> getCommonFriends(int id, int otherId, UserFields fields) {
         validateUserExists(id);
         validateUserExists(otherId);
-        return userStorage.getCommonFriends(id, otherId);
+        // общие друзья симметричны: (1, 2) и (2, 1) - одно вычисление
+        int first = Math.min(id, otherId);
+        int second = Math.max(id, otherId);
+        return singleFlight.run("users.commonFriends", Arrays.asList(first, second, fields),
+                () -> userStorage.getCommonFriends(first, second, fields), Entity.USERS);
     }
 
 
@@ -89,8 +120,9 @@ public class UserService {
         return user;
     }
 
+    // без друзей: для проверки они не нужны
     public User validateUserExists(int userId) {
-        User user = userStorage.getUserById(userId);
+        User user = userStorage.getUserById(userId, UserFields.SUMMARY);
         if (user == null) {
             throw new NotFoundException("Пользователь с id " + userId + " не найден.");
         }
@@ -5,7 +5,13 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -16,10 +22,21 @@ import java.util.Optional;
 @Repository
 public class DirectorDbStorage {
     private final JdbcTemplate jdbc;
+    private final CatalogVersions versions;
+    private final PopularityIndex popularity;
+    private final EntityCache<Integer, Film> filmCache;
+
+    public DirectorDbStorage(JdbcTemplate jdbc, CatalogVersions versions, PopularityIndex popularity) {
+        this(jdbc, versions, popularity, EntityCaches.disabled());
+    }
 
     @Autowired
-    public DirectorDbStorage(JdbcTemplate jdbc) {
+    public DirectorDbStorage(JdbcTemplate jdbc, CatalogVersions versions, PopularityIndex popularity,
+                             EntityCaches caches) {
         this.jdbc = jdbc;
+        this.versions = versions;
+        this.popularity = popularity;
+        this.filmCache = caches.films();
     }
 
     // добавить нового режиссера
@@ -36,6 +53,7 @@ public class DirectorDbStorage {
         if (kh.getKey() != null) {
             director.setId(kh.getKey().intValue());
         }
+        versions.bump(Entity.DIRECTORS);
         return director;
     }
 
@@ -45,6 +63,9 @@ public class DirectorDbStorage {
         jdbc.update(sql,
                 director.getName(),
                 director.getId());
+        // имя режиссёра входит и в ответы по фильмам
+        filmCache.invalidateIf(film -> hasDirector(film, director.getId()));
+        versions.bump(Entity.DIRECTORS, Entity.FILMS);
         return director;
     }
 
@@ -65,7 +86,19 @@ public class DirectorDbStorage {
     // удалить режиссера по id
     public void delete(int id) {
         final String sql = "DELETE FROM directors WHERE id = ?";
-        jdbc.update(sql, id);
+        // связи с фильмами удаляются каскадом, вместе с ними — порядки режиссёра в индексе
+        popularity.write(() -> {
+            jdbc.update(sql, id);
+            popularity.directorRemoved(id);
+        });
+        filmCache.invalidateIf(film -> hasDirector(film, id));
+        versions.bump(Entity.DIRECTORS, Entity.FILMS);
+    }
+
+    // какие фильмы снял режиссёр, видно по закэшированным фильмам; без загруженных режиссёров фильм не затронут
+    private static boolean hasDirector(Film film, int directorId) {
+        return film.getDirectors() != null
+                && film.getDirectors().stream().anyMatch(director -> director.getId() == directorId);
     }
 
     public boolean existsById(int id) {
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.limit.QueryDeadline;
+import ru.yandex.practicum.filmorate.logging.SqlTrace;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// Запуск независимых подзапросов (жанры, лайки, режиссёры, друзья) параллельно, каждый на своём
+// соединении из пула. В последовательном режиме fork выполняет запрос сразу в вызывающем потоке.
+@Slf4j
+@Component
+public class HydrationExecutor {
+    private final ExecutorService executor;
+
+    @Autowired
+    public HydrationExecutor(@Value("${filmorate.hydration.parallel:false}") boolean parallel,
+                             @Value("${filmorate.hydration.min-pool-size:8}") int minPoolSize,
+                             DataSource dataSource) {
+        boolean enabled = parallel;
+        if (parallel && dataSource instanceof HikariDataSource hikari && hikari.getMaximumPoolSize() < minPoolSize) {
+            log.warn("Параллельная загрузка отключена: пул соединений {} меньше {}",
+                    hikari.getMaximumPoolSize(), minPoolSize);
+            enabled = false;
+        }
+        this.executor = enabled ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    private HydrationExecutor(boolean parallel) {
+        this.executor = parallel ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    public static HydrationExecutor sequential() {
+        return new HydrationExecutor(false);
+    }
+
+    public static HydrationExecutor parallel() {
+        return new HydrationExecutor(true);
+    }
+
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    public <T> Supplier<T> fork(Supplier<T> query) {
+        if (executor == null) {
+            T result = query.get();
+            return () -> result;
+        }
+        // срок запроса и его трассировка действуют и на подзапросы в других потоках
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(
+                SqlTrace.propagate(QueryDeadline.propagate(query)), executor);
+        return () -> join(future);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
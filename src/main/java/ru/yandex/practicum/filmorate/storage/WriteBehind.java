@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Буферы отложенной записи хранилищ и общий таймер их сброса. Выключено - хранилища пишут сразу.
+// Последний сброс при остановке делают сами хранилища: они закрываются раньше пула соединений.
+@Slf4j
+@Component
+public class WriteBehind {
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final int maxPending;
+    private final List<WriteBehindBuffer<?, ?>> buffers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public WriteBehind(@Value("${filmorate.write-behind.enabled:false}") boolean enabled,
+                       @Value("${filmorate.write-behind.flush-interval:200ms}") Duration flushInterval,
+                       @Value("${filmorate.write-behind.max-pending:10000}") int maxPending) {
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+    }
+
+    public static WriteBehind disabled() {
+        return new WriteBehind(false, Duration.ZERO, 0);
+    }
+
+    // без таймера: сброс при переполнении или явным вызовом
+    public static WriteBehind manual(int maxPending) {
+        return new WriteBehind(true, Duration.ZERO, maxPending);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || flushInterval.isZero()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("write-behind-flush").daemon().factory());
+        long period = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushAll, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // loader читает из БД значения пачки ключей (нет ключа - записи нет), writer пишет пачку изменений,
+    // rejected получает операции, которые БД отвергла и по одной
+    public <K, V> WriteBehindBuffer<K, V> buffer(String name, Function<Collection<K>, Map<K, V>> loader,
+                                                 Consumer<List<WriteBehindBuffer.Change<K, V>>> writer,
+                                                 Consumer<List<WriteBehindBuffer.Change<K, V>>> rejected) {
+        return buffer(name, loader, writer, rejected, Runnable::run);
+    }
+
+    // guard оборачивает каждый сброс, например блокировкой индекса, который writer правит вслед за БД
+    public <K, V> WriteBehindBuffer<K, V> buffer(String name, Function<Collection<K>, Map<K, V>> loader,
+                                                 Consumer<List<WriteBehindBuffer.Change<K, V>>> writer,
+                                                 Consumer<List<WriteBehindBuffer.Change<K, V>>> rejected,
+                                                 Consumer<Runnable> guard) {
+        WriteBehindBuffer<K, V> buffer = new WriteBehindBuffer<>(name, maxPending, loader, writer, rejected, guard);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    void flushAll() {
+        for (WriteBehindBuffer<?, ?> buffer : buffers) {
+            try {
+                buffer.flush();
+            } catch (RuntimeException e) {
+                log.error("Сброс отложенной записи не удался", e);
+            }
+        }
+    }
+}
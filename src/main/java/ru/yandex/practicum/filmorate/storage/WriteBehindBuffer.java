@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Отложенная запись связей, которые либо есть, либо нет (лайк, дружба). Операции записываются вслепую,
+// без чтения из БД: для ключа хранится только значение после всех операций (null - записи нет),
+// повторные операции ничего не меняют. При сбросе значения всех ключей пачки читаются из БД одним
+// запросом на LOOKUP_CHUNK ключей, и в БД уходят только отличия от них: удаление с повторным
+// добавлением существующей записи оставляет её как есть.
+@Slf4j
+public class WriteBehindBuffer<K, V> {
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final String name;
+    private final int maxPending;
+    private final Function<Collection<K>, Map<K, V>> loader;
+    private final Consumer<List<Change<K, V>>> writer;
+    private final Consumer<List<Change<K, V>>> rejected;
+    // вокруг сброса: например, блокировка индекса, который writer правит вместе с БД
+    private final Consumer<Runnable> guard;
+    private final ConcurrentHashMap<K, Wanted<V>> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    WriteBehindBuffer(String name, int maxPending, Function<Collection<K>, Map<K, V>> loader,
+                      Consumer<List<Change<K, V>>> writer, Consumer<List<Change<K, V>>> rejected,
+                      Consumer<Runnable> guard) {
+        this.name = name;
+        this.maxPending = maxPending;
+        this.loader = loader;
+        this.writer = writer;
+        this.rejected = rejected;
+        this.guard = guard;
+    }
+
+    // false - запись уже добавлена в буфере и операция ничего не меняет
+    public boolean add(K key, V value) {
+        boolean changed = record(key, value);
+        flushIfFull();
+        return changed;
+    }
+
+    // false - запись уже удалена в буфере и операция ничего не меняет
+    public boolean remove(K key) {
+        boolean changed = record(key, null);
+        flushIfFull();
+        return changed;
+    }
+
+    // ещё не сброшенные операции для чтения: значение после них, null - запись удалена
+    public void forEachPending(BiConsumer<K, V> action) {
+        pending.forEach((key, wanted) -> action.accept(key, wanted.value()));
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    // выбрасывает ожидающие операции, например перед удалением фильма или пользователя целиком;
+    // в БД они не попадали, поэтому возвращаются только ключи
+    public List<K> discard(Predicate<K> filter) {
+        flushLock.lock();
+        try {
+            List<K> discarded = new ArrayList<>();
+            pending.forEach((key, wanted) -> {
+                if (filter.test(key) && pending.remove(key, wanted)) {
+                    discarded.add(key);
+                }
+            });
+            return discarded;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void flush() {
+        guard.accept(() -> {
+            flushLock.lock();
+            try {
+                flushPending();
+            } finally {
+                flushLock.unlock();
+            }
+        });
+    }
+
+    private boolean record(K key, V value) {
+        boolean[] changed = {false};
+        pending.compute(key, (k, current) -> {
+            if (current != null && (current.value() == null) == (value == null)) {
+                return current;
+            }
+            changed[0] = true;
+            return new Wanted<>(value);
+        });
+        return changed[0];
+    }
+
+    private void flushPending() {
+        Map<K, Wanted<V>> batch = new HashMap<>(pending);
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<K, V> stored = load(new ArrayList<>(batch.keySet()));
+        List<Change<K, V>> changes = new ArrayList<>();
+        batch.forEach((key, wanted) -> {
+            Change<K, V> change = new Change<>(key, stored.get(key), wanted.value());
+            if (change.isEffective()) {
+                changes.add(change);
+            }
+        });
+        if (!changes.isEmpty()) {
+            write(changes);
+        }
+        // операции, пришедшие во время сброса, остаются до следующего
+        batch.forEach(pending::remove);
+    }
+
+    private Map<K, V> load(List<K> keys) {
+        Map<K, V> stored = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += LOOKUP_CHUNK) {
+            stored.putAll(loader.apply(keys.subList(from, Math.min(from + LOOKUP_CHUNK, keys.size()))));
+        }
+        return stored;
+    }
+
+    // одна пачка; если она не прошла, по одной, а отвергнутые БД операции выбрасываются
+    private void write(List<Change<K, V>> batch) {
+        try {
+            writer.accept(batch);
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Сброс {} пачкой из {} операций не удался, пишем по одной: {}", name, batch.size(),
+                    e.getMessage());
+        }
+        List<Change<K, V>> failed = new ArrayList<>();
+        for (Change<K, V> change : batch) {
+            try {
+                writer.accept(List.of(change));
+            } catch (RuntimeException e) {
+                log.warn("Отложенная операция {} {} отвергнута: {}", name, change, e.getMessage());
+                failed.add(change);
+            }
+        }
+        if (!failed.isEmpty()) {
+            rejected.accept(failed);
+        }
+    }
+
+    private void flushIfFull() {
+        if (pending.size() < maxPending) {
+            return;
+        }
+        guard.accept(() -> {
+            if (flushLock.tryLock()) {
+                try {
+                    flushPending();
+                } finally {
+                    flushLock.unlock();
+                }
+            }
+        });
+    }
+
+    // изменение при сбросе: stored - значение в БД, wanted - после операций, null - записи нет
+    public record Change<K, V>(K key, V stored, V wanted) {
+        public boolean isEffective() {
+            return (stored == null) != (wanted == null);
+        }
+
+        public boolean isAdd() {
+            return stored == null && wanted != null;
+        }
+    }
+
+    private record Wanted<V>(V value) {
+    }
+}
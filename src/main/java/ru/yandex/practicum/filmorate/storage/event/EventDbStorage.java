@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.storage.event;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Operation;
@@ -16,6 +17,7 @@ import java.util.List;
 public class EventDbStorage implements EventStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final LikeAnalytics analytics;
 
     @Override
     public void addEvent(int userId, EventType eventType, Operation operation, int entityId) {
@@ -28,6 +30,7 @@ public class EventDbStorage implements EventStorage {
                 operation.name(),
                 entityId,
                 timestamp);
+        analytics.eventRecorded(userId);
     }
 
     @Override
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Потоковая выдача, записанная для повторной отдачи: одну выборку получают несколько ответов.
+// Коллекции из хранилища не копируются и после записи не меняются
+public final class FilmBuffer implements FilmSink {
+    private final List<Row> rows = new ArrayList<>();
+
+    public static FilmBuffer of(Consumer<FilmSink> source) {
+        FilmBuffer buffer = new FilmBuffer();
+        source.accept(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void film(int id, String name, String description, LocalDate releaseDate, int duration, Mpa mpa,
+                     Collection<Genre> genres, Collection<Integer> likes, Collection<Director> directors) {
+        rows.add(new Row(id, name, description, releaseDate, duration, mpa, genres, likes, directors));
+    }
+
+    public void replay(FilmSink sink) {
+        for (Row row : rows) {
+            sink.film(row.id(), row.name(), row.description(), row.releaseDate(), row.duration(), row.mpa(),
+                    row.genres(), row.likes(), row.directors());
+        }
+    }
+
+    private record Row(int id, String name, String description, LocalDate releaseDate, int duration, Mpa mpa,
+                       Collection<Genre> genres, Collection<Integer> likes, Collection<Director> directors) {
+    }
+}
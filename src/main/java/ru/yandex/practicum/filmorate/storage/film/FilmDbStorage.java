@@ -2,56 +2,112 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.cache.KnownIds;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
 
 import java.sql.Date;
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @Repository
 public class FilmDbStorage implements FilmStorage {
+    private static final String ALL_FILMS_SQL = "SELECT f.*, m.name as mpa_name FROM films f "
+            + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id";
 
     private final JdbcTemplate jdbcTemplate;
+    private final HydrationExecutor hydration;
+    private final CatalogVersions versions;
+    private final PopularityIndex popularity;
+    private final TrendingIndex trending;
+    private final PendingLikes pendingLikes;
+    private final EntityCache<Integer, Film> filmCache;
+    private final KnownIds knownIds;
 
-    @Autowired
     public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, HydrationExecutor.sequential(), new CatalogVersions(), PopularityIndex.disabled(),
+                TrendingIndex.detached());
+    }
+
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending) {
+        this(jdbcTemplate, hydration, versions, popularity, trending, PendingLikes.disabled());
+    }
+
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending, PendingLikes pendingLikes) {
+        this(jdbcTemplate, hydration, versions, popularity, trending, pendingLikes, EntityCaches.disabled());
+    }
+
+    @Autowired
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending, PendingLikes pendingLikes,
+                         EntityCaches caches) {
         this.jdbcTemplate = jdbcTemplate;
+        this.hydration = hydration;
+        this.versions = versions;
+        this.popularity = popularity;
+        this.trending = trending;
+        this.pendingLikes = pendingLikes;
+        this.filmCache = caches.films();
+        this.knownIds = caches.filmIds();
     }
 
     @Override
     public Film addFilm(Film film) {
         try {
-            String sql = "INSERT INTO films (name, description, release_date, duration, mpa_rating_id) "
-                    + "VALUES (?, ?, ?, ?, ?)";
-
-            KeyHolder keyHolder = new GeneratedKeyHolder();
-
-            jdbcTemplate.update(connection -> {
-                PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                stmt.setString(1, film.getName());
-                stmt.setString(2, film.getDescription());
-                stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
-                stmt.setInt(4, film.getDuration());
-                int mpaId = (film.getMpa() != null && film.getMpa().getId() > 0) ? film.getMpa().getId() : 1;
-                stmt.setInt(5, mpaId);
-                return stmt;
-            }, keyHolder);
-
-            Integer generatedId = keyHolder.getKey() != null ? keyHolder.getKey().intValue() : null;
-            if (generatedId == null) {
-                throw new RuntimeException("Failed to generate film ID");
-            }
-            film.setId(generatedId);
+            popularity.write(() -> insertFilm(film));
+            return getFilmById(film.getId());
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while adding film", e);
+        }
+    }
 
+    private void insertFilm(Film film) {
+        String sql = "INSERT INTO films (name, description, release_date, duration, mpa_rating_id) "
+                + "VALUES (?, ?, ?, ?, ?)";
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.update(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            stmt.setString(1, film.getName());
+            stmt.setString(2, film.getDescription());
+            stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+            stmt.setInt(4, film.getDuration());
+            int mpaId = (film.getMpa() != null && film.getMpa().getId() > 0) ? film.getMpa().getId() : 1;
+            stmt.setInt(5, mpaId);
+            return stmt;
+        }, keyHolder);
+
+        Integer generatedId = keyHolder.getKey() != null ? keyHolder.getKey().intValue() : null;
+        if (generatedId == null) {
+            throw new RuntimeException("Failed to generate film ID");
+        }
+        film.setId(generatedId);
+        knownIds.added(generatedId);
+
+        try {
             if (film.getGenres() != null && !film.getGenres().isEmpty()) {
                 updateFilmGenres(film);
             }
@@ -59,56 +115,109 @@ public class FilmDbStorage implements FilmStorage {
             if (film.getDirectors() != null && !film.getDirectors().isEmpty()) {
                 saveFilmDirectors(film.getId(), film.getDirectors());
             }
-
-            return getFilmById(film.getId());
-        } catch (DataAccessException e) {
-            throw new RuntimeException("Database error while adding film", e);
+        } catch (RuntimeException e) {
+            // фильм уже записан, а жанры могли сохраниться частично
+            popularity.invalidate();
+            versions.bump(Entity.FILMS);
+            throw e;
         }
+        popularity.filmSaved(film.getId(), film.getReleaseDate(), genreIdsOf(film), directorIdsOf(film));
+        // версия растёт последней: запрос, увидевший её, читает фильм уже с жанрами и режиссёрами,
+        // и его ответ можно кэшировать под этой версией
+        versions.bump(Entity.FILMS);
     }
 
     @Override
     public Film updateFilm(Film film) {
         try {
-            String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, "
-                    + "mpa_rating_id = ? WHERE id = ?";
-
-            int updated = jdbcTemplate.update(sql,
-                    film.getName(),
-                    film.getDescription(),
-                    film.getReleaseDate(),
-                    film.getDuration(),
-                    film.getMpa() != null ? film.getMpa().getId() : 1,
-                    film.getId());
-
-            if (updated == 0) {
+            boolean updated = popularity.write(() -> updateFilmRow(film));
+            if (!updated) {
                 return null;
             }
+            return getFilmById(film.getId());
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while updating film", e);
+        }
+    }
 
+    private boolean updateFilmRow(Film film) {
+        String sql = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, "
+                + "mpa_rating_id = ? WHERE id = ?";
+
+        int updated = jdbcTemplate.update(sql,
+                film.getName(),
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                film.getMpa() != null ? film.getMpa().getId() : 1,
+                film.getId());
+
+        if (updated == 0) {
+            return false;
+        }
+
+        try {
             updateFilmGenres(film);
 
             saveFilmDirectors(film.getId(), film.getDirectors());
+        } catch (RuntimeException e) {
+            popularity.invalidate();
+            filmCache.invalidate(film.getId());
+            versions.bump(Entity.FILMS);
+            throw e;
+        }
+        popularity.filmSaved(film.getId(), film.getReleaseDate(), genreIdsOf(film), directorIdsOf(film));
+        // как при вставке: кэш фильма сбрасывается и версия растёт после всех записей
+        filmCache.invalidate(film.getId());
+        versions.bump(Entity.FILMS);
+        return true;
+    }
 
-            return getFilmById(film.getId());
-        } catch (DataAccessException e) {
-            throw new RuntimeException("Database error while updating film", e);
+    private static List<Integer> genreIdsOf(Film film) {
+        if (film.getGenres() == null) {
+            return List.of();
         }
+        return film.getGenres().stream().map(Genre::getId).toList();
+    }
+
+    private static List<Integer> directorIdsOf(Film film) {
+        if (film.getDirectors() == null) {
+            return List.of();
+        }
+        return film.getDirectors().stream().map(Director::getId).toList();
     }
 
     @Override
     public Film getFilmById(int id) {
+        return getFilmById(id, FilmFields.FULL);
+    }
+
+    @Override
+    public Film getFilmById(int id, FilmFields fields) {
+        if (!knownIds.mightExist(id)) {
+            return null;
+        }
+        Film cached = filmCache.getIfPresent(id, film -> hasFields(film, fields));
+        if (cached != null) {
+            return project(cached, fields);
+        }
+        long stamp = filmCache.stamp(id);
         try {
             String sql = "SELECT f.*, m.name as mpa_name FROM films f "
                     + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id "
                     + "WHERE f.id = ?";
 
-            List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> {
-                Film film = mapRowToFilm(rs);
-                film.setGenres(getGenresForFilmIds(Set.of(film.getId())).getOrDefault(film.getId(), new ArrayList<>()));
-                film.setLikes(new HashSet<>(getLikesForFilmIds(Set.of(film.getId())).getOrDefault(film.getId(), Collections.emptyList())));
-                film.setDirectors(loadDirectorsById(film.getId()));
-                return film;
-            }, id);
-            return films.isEmpty() ? null : films.get(0);
+            List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), id);
+            if (films.isEmpty()) {
+                return null;
+            }
+            hydrate(films, fields);
+            filmCache.put(id, EntityCaches.frozen(films.get(0)), stamp);
+            return films.get(0);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while getting film by id: " + id, e);
         }
@@ -123,104 +232,322 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> getAllFilms() {
         try {
-            String sql = "SELECT f.*, m.name as mpa_name FROM films f "
-                    + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id";
-
-            List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs));
+            List<Film> films = jdbcTemplate.query(ALL_FILMS_SQL, (rs, rowNum) -> mapRowToFilm(rs));
 
             if (films.isEmpty()) return films;
 
-            Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
-
-            Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-            Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
-            Map<Integer, LinkedHashSet<Director>> directorsByFilmId = loadDirectors(filmIds);
-
-
-            for (Film film : films) {
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-                film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-                film.setDirectors(directorsByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
-            }
+            hydrate(films, FilmFields.FULL);
             return films;
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while getting all films", e);
         }
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
+    public boolean addLike(int filmId, int userId) {
+        if (pendingLikes.isEnabled()) {
+            // рейтинги и тренды узнают о лайке при сбросе, когда станет известно, был ли он в БД
+            if (pendingLikes.add(filmId, userId, trending.now())) {
+                likeChanged(filmId, userId, true);
+                versions.bump(Entity.FILMS);
+                return true;
+            }
+            return false;
+        }
         try {
-            String sql = "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)";
-            jdbcTemplate.update(sql, filmId, userId);
+            String sql = "INSERT INTO film_likes (film_id, user_id, created_at) VALUES (?, ?, ?)";
+            Instant likedAt = trending.now();
+            popularity.write(() -> {
+                jdbcTemplate.update(sql, filmId, userId, Timestamp.from(likedAt));
+                popularity.likeAdded(filmId);
+                trending.likeAdded(filmId, likedAt);
+            });
+            likeChanged(filmId, userId, true);
+            versions.bump(Entity.FILMS);
+            return true;
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
-            // игнорим
+            // игнорим: лайк уже есть
+            return false;
         }
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
+    public boolean removeLike(int filmId, int userId) {
+        if (pendingLikes.isEnabled()) {
+            if (pendingLikes.remove(filmId, userId)) {
+                likeChanged(filmId, userId, false);
+                versions.bump(Entity.FILMS);
+                return true;
+            }
+            return false;
+        }
         try {
-            String sql = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-            jdbcTemplate.update(sql, filmId, userId);
+            // время удалённого лайка нужно, чтобы вычесть из тренда именно его вес
+            String sql = "SELECT created_at FROM OLD TABLE "
+                    + "(DELETE FROM film_likes WHERE film_id = ? AND user_id = ?)";
+            boolean removed = popularity.write(() -> {
+                List<Timestamp> deleted = jdbcTemplate.queryForList(sql, Timestamp.class, filmId, userId);
+                if (deleted.isEmpty()) {
+                    return false;
+                }
+                popularity.likeRemoved(filmId);
+                trending.likeRemoved(filmId, deleted.get(0).toInstant());
+                return true;
+            });
+            if (removed) {
+                likeChanged(filmId, userId, false);
+                versions.bump(Entity.FILMS);
+            }
+            return removed;
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             // игнорим
+            return false;
         }
     }
 
+    // лайк меняет у закэшированного фильма только список лайков, остальное остаётся в кэше
+    private void likeChanged(int filmId, int userId, boolean added) {
+        filmCache.update(filmId, cached -> {
+            if (cached.getLikes() == null) {
+                return cached;
+            }
+            Film film = EntityCaches.shell(cached);
+            if (added) {
+                film.getLikes().add(userId);
+            } else {
+                film.getLikes().remove(userId);
+            }
+            return EntityCaches.frozen(film);
+        });
+    }
+
+    private static boolean hasFields(Film film, FilmFields fields) {
+        return (!fields.genres() || film.getGenres() != null) && (!fields.likes() || film.getLikes() != null)
+                && (!fields.directors() || film.getDirectors() != null);
+    }
+
+    // фильм из кэша с запрошенными связями; незапрошенные - null, как при чтении из БД
+    private static Film project(Film cached, FilmFields fields) {
+        Film film = EntityCaches.shell(cached);
+        if (!fields.genres()) {
+            film.setGenres(null);
+        }
+        if (!fields.likes()) {
+            film.setLikes(null);
+        }
+        if (!fields.directors()) {
+            film.setDirectors(null);
+        }
+        return film;
+    }
+
     @Override
-    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
-        try {
-            List<Integer> parameters = new ArrayList<>();
+    public List<Film> getTrendingFilms(int count) {
+        return getTrendingFilms(count, FilmFields.FULL);
+    }
 
-             String sql = "SELECT f.*, m.name as mpa_name, "
-                    + "COUNT(fl.user_id) as likes_count "
-                    + "FROM films f "
-                    + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id "
-                    + "LEFT JOIN film_likes fl ON f.id = fl.film_id "
-                    + "LEFT JOIN film_genres fg ON f.id = fg.film_id ";
+    @Override
+    public List<Film> getTrendingFilms(int count, FilmFields fields) {
+        return getFilmsByIds(trending.topFilmIds(count), fields);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        return getFilmsByIds(ids, FilmFields.FULL);
+    }
 
-            if (genreId != null || year != null) {
-                sql += "WHERE ";
+    // фильмы в порядке переданных id; отсутствующие пропускаются. Из БД читаются только промахи кэша
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids, FilmFields fields) {
+        try {
+            Map<Integer, Film> found = new HashMap<>();
+            Map<Integer, Long> missing = new LinkedHashMap<>();
+            for (int id : ids) {
+                if (found.containsKey(id) || missing.containsKey(id) || !knownIds.mightExist(id)) {
+                    continue;
+                }
+                Film cached = filmCache.getIfPresent(id, film -> hasFields(film, fields));
+                if (cached != null) {
+                    found.put(id, project(cached, fields));
+                } else {
+                    missing.put(id, filmCache.stamp(id));
+                }
             }
-            if (genreId != null) {
-                sql += "fg.genre_id = ? ";
-                parameters.add(genreId);
+            if (!missing.isEmpty()) {
+                FilmQuery query = filmsByIdsQuery(new ArrayList<>(missing.keySet()));
+                List<Film> loaded = jdbcTemplate.query(query.sql(), (rs, rowNum) -> mapRowToFilm(rs),
+                        query.params());
+                if (!loaded.isEmpty()) {
+                    hydrate(loaded, fields);
+                }
+                for (Film film : loaded) {
+                    filmCache.put(film.getId(), EntityCaches.frozen(film), missing.get(film.getId()));
+                    found.put(film.getId(), film);
+                }
             }
-            if (genreId != null && year != null) {
-                sql += "AND ";
+
+            List<Film> films = new ArrayList<>();
+            for (int id : new LinkedHashSet<>(ids)) {
+                Film film = found.get(id);
+                if (film != null) {
+                    films.add(film);
+                }
             }
-            if (year != null) {
-                sql += "YEAR(f.release_date) = ?";
-                parameters.add(year);
+            return films;
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while getting films by ids", e);
+        }
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        try {
+            FilmQuery query = popularFilmsQuery(count, genreId, year);
+            List<Film> films = jdbcTemplate.query(query.sql(), (rs, rowNum) -> mapRowToFilm(rs), query.params());
+
+            if (films.isEmpty()) return films;
+            if (query.order() != null) {
+                sortByOrder(films, Film::getId, query.order());
             }
 
-            sql += "GROUP BY f.id, m.name "
-                    + "ORDER BY likes_count DESC "
-                    + "LIMIT ?";
-            parameters.add(count);
+            hydrate(films, FilmFields.FULL);
+            return films;
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while getting popular films", e);
+        }
+    }
 
-            List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), parameters.toArray());
+    // рейтинг берётся срезом из PopularityIndex, запрос — пока индекс не собран или выключен
+    private FilmQuery popularFilmsQuery(int count, Integer genreId, Integer year) {
+        Optional<List<Integer>> ranked = popularity.topFilmIds(count, genreId, year);
+        if (ranked.isPresent()) {
+            return filmsByIdsQuery(ranked.get());
+        }
 
-            if (films.isEmpty()) return films;
+        List<Object> parameters = new ArrayList<>();
 
-            Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
+        String sql = "SELECT f.*, m.name as mpa_name, "
+                + "COUNT(fl.user_id) as likes_count "
+                + "FROM films f "
+                + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id "
+                + "LEFT JOIN film_likes fl ON f.id = fl.film_id ";
 
-            Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-            Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
-            Map<Integer, LinkedHashSet<Director>> directorsByFilmId = loadDirectors(filmIds);
+        // жанр через EXISTS, чтобы не размножать строки лайков, год — диапазоном дат по индексу
+        List<String> conditions = new ArrayList<>();
+        if (genreId != null) {
+            conditions.add("EXISTS (SELECT 1 FROM film_genres fg WHERE fg.film_id = f.id AND fg.genre_id = ?)");
+            parameters.add(genreId);
+        }
+        if (year != null) {
+            conditions.add("f.release_date >= ? AND f.release_date < ?");
+            parameters.add(LocalDate.of(year, 1, 1));
+            parameters.add(LocalDate.of(year + 1, 1, 1));
+        }
+        if (!conditions.isEmpty()) {
+            sql += "WHERE " + String.join(" AND ", conditions) + " ";
+        }
 
-            for (Film film : films) {
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-                film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-                film.setDirectors(directorsByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
-            }
-            return films;
+        sql += "GROUP BY f.id, m.name "
+                + "ORDER BY likes_count DESC, f.id "
+                + "LIMIT ?";
+        parameters.add(count);
+        return new FilmQuery(sql, parameters.toArray());
+    }
+
+    // выборка фильмов по списку id; порядок восстанавливается по списку после чтения
+    private FilmQuery filmsByIdsQuery(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new FilmQuery(ALL_FILMS_SQL + " WHERE 1 = 0", new Object[0]);
+        }
+        String inSql = ids.stream().map(x -> "?").collect(Collectors.joining(","));
+        return new FilmQuery(ALL_FILMS_SQL + " WHERE f.id IN (" + inSql + ")", ids.toArray(), ids);
+    }
+
+    private static <T> void sortByOrder(List<T> items, ToIntFunction<T> id, List<Integer> order) {
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            positions.putIfAbsent(order.get(i), i);
+        }
+        items.sort(Comparator.comparingInt(item -> positions.getOrDefault(id.applyAsInt(item), Integer.MAX_VALUE)));
+    }
+
+    @Override
+    public void streamAllFilms(FilmSink sink) {
+        streamAllFilms(FilmFields.FULL, sink);
+    }
+
+    @Override
+    public void streamAllFilms(FilmFields fields, FilmSink sink) {
+        try {
+            streamFilms(new FilmQuery(ALL_FILMS_SQL, new Object[0]), fields, sink);
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while getting all films", e);
+        }
+    }
+
+    @Override
+    public void streamPopularFilms(int count, Integer genreId, Integer year, FilmSink sink) {
+        streamPopularFilms(count, genreId, year, FilmFields.FULL, sink);
+    }
+
+    @Override
+    public void streamPopularFilms(int count, Integer genreId, Integer year, FilmFields fields, FilmSink sink) {
+        try {
+            streamFilms(popularFilmsQuery(count, genreId, year), fields, sink);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while getting popular films", e);
         }
     }
 
+    @Override
+    public void streamFilmsByFilter(String query, List<String> by, FilmSink sink) {
+        streamFilmsByFilter(query, by, FilmFields.FULL, sink);
+    }
+
+    @Override
+    public void streamFilmsByFilter(String query, List<String> by, FilmFields fields, FilmSink sink) {
+        try {
+            streamFilms(filterQuery(query, by), fields, sink);
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while getting films by director, title", e);
+        }
+    }
+
+    // фильмы уходят в sink прямо из строк выборки и карт связей, без объектов Film и копий коллекций
+    private void streamFilms(FilmQuery query, FilmFields fields, FilmSink sink) {
+        Map<Integer, Mpa> mpaById = new HashMap<>();
+        List<FilmRow> rows = jdbcTemplate.query(query.sql(), (rs, rowNum) -> mapRowToFilmRow(rs, mpaById),
+                query.params());
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (query.order() != null) {
+            sortByOrder(rows, FilmRow::id, query.order());
+        }
+
+        Relations relations = loadRelations(rows.stream().map(FilmRow::id).collect(Collectors.toSet()), fields);
+        for (FilmRow row : rows) {
+            sink.film(row.id(), row.name(), row.description(), row.releaseDate(), row.duration(), row.mpa(),
+                    relations.genresOf(row.id()), relations.likesOf(row.id()), relations.directorsOf(row.id()));
+        }
+    }
+
     public Map<Integer, List<Genre>> getGenresForFilmIds(Set<Integer> filmIds) {
         if (filmIds == null || filmIds.isEmpty()) {
             return new HashMap<>();
@@ -232,11 +559,18 @@ public class FilmDbStorage implements FilmStorage {
                 "WHERE fg.film_id IN (" + inSql + ") ORDER BY fg.film_id, g.id";
 
         Map<Integer, List<Genre>> result = new HashMap<>();
+        // один экземпляр жанра на все фильмы выборки
+        Map<Integer, Genre> genreById = new HashMap<>();
         jdbcTemplate.query(sql, filmIds.toArray(), (rs) -> {
             int filmId = rs.getInt("film_id");
-            Genre genre = new Genre();
-            genre.setId(rs.getInt("id"));
-            genre.setName(rs.getString("name"));
+            int genreId = rs.getInt("id");
+            String genreName = rs.getString("name");
+            Genre genre = genreById.computeIfAbsent(genreId, id -> {
+                Genre g = new Genre();
+                g.setId(id);
+                g.setName(genreName);
+                return g;
+            });
             result.computeIfAbsent(filmId, k -> new ArrayList<>()).add(genre);
         });
         return result;
@@ -256,9 +590,33 @@ public class FilmDbStorage implements FilmStorage {
             int userId = rs.getInt("user_id");
             result.computeIfAbsent(filmId, k -> new ArrayList<>()).add(userId);
         });
+        pendingLikes.overlay(filmIds, result);
         return result;
     }
 
+    // запрошенные связи для списка фильмов, остальные остаются null
+    private void hydrate(List<Film> films, FilmFields fields) {
+        Relations relations = loadRelations(films.stream().map(Film::getId).collect(Collectors.toSet()), fields);
+
+        for (Film film : films) {
+            film.setGenres(relations.genresOf(film.getId()));
+            List<Integer> likes = relations.likesOf(film.getId());
+            film.setLikes(likes != null ? new HashSet<>(likes) : null);
+            film.setDirectors(relations.directorsOf(film.getId()));
+        }
+    }
+
+    // до трёх независимых запросов, при включённом filmorate.hydration.parallel выполняются одновременно
+    private Relations loadRelations(Set<Integer> filmIds, FilmFields fields) {
+        Supplier<Map<Integer, List<Genre>>> genres = fields.genres()
+                ? hydration.fork(() -> getGenresForFilmIds(filmIds)) : () -> null;
+        Supplier<Map<Integer, List<Integer>>> likes = fields.likes()
+                ? hydration.fork(() -> getLikesForFilmIds(filmIds)) : () -> null;
+        Supplier<Map<Integer, LinkedHashSet<Director>>> directors = fields.directors()
+                ? hydration.fork(() -> loadDirectors(filmIds)) : () -> null;
+        return new Relations(genres.get(), likes.get(), directors.get());
+    }
+
     private Film mapRowToFilm(ResultSet rs) throws SQLException {
         Film film = new Film();
         film.setId(rs.getInt("id"));
@@ -277,6 +635,24 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
+    private FilmRow mapRowToFilmRow(ResultSet rs, Map<Integer, Mpa> mpaById) throws SQLException {
+        Date releaseDate = rs.getDate("release_date");
+        int mpaId = rs.getInt("mpa_rating_id");
+        String mpaName = rs.getString("mpa_name");
+        Mpa mpa = mpaById.computeIfAbsent(mpaId, id -> {
+            Mpa m = new Mpa();
+            m.setId(id);
+            m.setName(mpaName != null ? mpaName : "G");
+            return m;
+        });
+        return new FilmRow(rs.getInt("id"),
+                Optional.ofNullable(rs.getString("name")).orElse(""),
+                Optional.ofNullable(rs.getString("description")).orElse(""),
+                releaseDate != null ? releaseDate.toLocalDate() : LocalDate.MIN,
+                rs.getInt("duration"),
+                mpa);
+    }
+
     private void updateFilmGenres(Film film) {
         try {
             jdbcTemplate.update("DELETE FROM film_genres WHERE film_id = ?", film.getId());
@@ -291,45 +667,71 @@ public class FilmDbStorage implements FilmStorage {
                     jdbcTemplate.update(sql, film.getId(), genreId);
                 }
             }
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while updating film genres", e);
         }
     }
 
     // сортировка фильмов одного режиссера по лайкам или году
+    @Override
     public List<Film> getFilmsByDirectorSorted(int directorId, String sortBy) {
-        String base = "SELECT f.*, m.name as mpa_name " +
-                "FROM films f " +
-                "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
-                "JOIN film_directors fd ON fd.film_id = f.id " +
-                "WHERE fd.director_id = ?";
+        return getFilmsByDirectorSorted(directorId, sortBy, FilmFields.FULL);
+    }
 
-        String order;
+    @Override
+    public List<Film> getFilmsByDirectorSorted(int directorId, String sortBy, FilmFields fields) {
+        boolean byLikes;
         if ("likes".equalsIgnoreCase(sortBy)) {
-            order = " ORDER BY (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.id) DESC, f.id";
+            byLikes = true;
         } else if ("year".equalsIgnoreCase(sortBy)) {
-            order = " ORDER BY f.release_date, f.id";
+            byLikes = false;
         } else {
             throw new IllegalArgumentException("sortBy must be 'likes' or 'year'");
         }
 
-        List<Film> films = jdbcTemplate.query(base + order, (rs, rn) -> mapRowToFilm(rs), directorId);
-        if (films.isEmpty()) {
+        try {
+            FilmQuery query = directorFilmsQuery(directorId, byLikes);
+            List<Film> films = jdbcTemplate.query(query.sql(), (rs, rn) -> mapRowToFilm(rs), query.params());
+            if (films.isEmpty()) {
+                return films;
+            }
+            if (query.order() != null) {
+                sortByOrder(films, Film::getId, query.order());
+            }
+
+            hydrate(films, fields);
             return films;
+        } catch (QueryTimeoutException e) {
+            throw e;
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Database error while getting films by director: " + directorId, e);
         }
+    }
 
-        Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
-
-        Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-        Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
-        Map<Integer, LinkedHashSet<Director>> directorsByFilmId = loadDirectors(filmIds);
+    // готовый порядок из PopularityIndex, запрос — пока индекс не собран или выключен
+    private FilmQuery directorFilmsQuery(int directorId, boolean byLikes) {
+        Optional<List<Integer>> ordered = popularity.directorFilmIds(directorId, byLikes);
+        if (ordered.isPresent()) {
+            return filmsByIdsQuery(ordered.get());
+        }
 
-        for (Film film : films) {
-            film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-            film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-            film.setDirectors(directorsByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
+        String sql = "SELECT f.*, m.name as mpa_name " +
+                "FROM films f " +
+                "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id " +
+                "JOIN film_directors fd ON fd.film_id = f.id ";
+        if (byLikes) {
+            // один проход по лайкам вместо подзапроса на каждый фильм
+            sql += "LEFT JOIN film_likes fl ON fl.film_id = f.id " +
+                    "WHERE fd.director_id = ? " +
+                    "GROUP BY f.id, m.name " +
+                    "ORDER BY COUNT(fl.user_id) DESC, f.id";
+        } else {
+            sql += "WHERE fd.director_id = ? " +
+                    "ORDER BY f.release_date, f.id";
         }
-        return films;
+        return new FilmQuery(sql, new Object[]{directorId});
     }
 
     // поддержка сохранения режиссёров в таблицу film_directors
@@ -359,80 +761,82 @@ public class FilmDbStorage implements FilmStorage {
                 "ORDER BY fd.film_id, d.name";
 
         Map<Integer, LinkedHashSet<Director>> result = new HashMap<>();
+        Map<Integer, Director> directorById = new HashMap<>();
 
         jdbcTemplate.query(sql, filmIds.toArray(), rs -> {
             int filmId = rs.getInt("film_id");
-            Director director = new Director();
-            director.setId(rs.getInt("director_id"));
-            director.setName(rs.getString("director_name"));
+            int directorId = rs.getInt("director_id");
+            String directorName = rs.getString("director_name");
+            Director director = directorById.computeIfAbsent(directorId, id -> {
+                Director d = new Director();
+                d.setId(id);
+                d.setName(directorName);
+                return d;
+            });
             result.computeIfAbsent(filmId, k -> new LinkedHashSet<>()).add(director);
         });
 
         return result;
     }
 
-    private Set<Director> loadDirectorsById(int filmId) {
-        Map<Integer, LinkedHashSet<Director>> map = loadDirectors(Set.of(filmId));
-        return map.getOrDefault(filmId, new LinkedHashSet<>());
-    }
-
 
     //поиск фильмов по имени режиссёра/названию фильма
     @Override
     public List<Film> getFilmsByFilter(String query, List<String> by) {
         try {
-            List<String> queries = new ArrayList<>();
-
-            String sql = "SELECT f.*, m.name as mpa_name, "
-                    + "COUNT(fl.user_id) as likes_count "
-                    + "FROM films f "
-                    + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id "
-                    + "LEFT JOIN film_likes fl ON f.id = fl.film_id "
-                    + "LEFT JOIN film_directors fd ON f.id = fd.film_id "
-                    + "LEFT JOIN directors d ON fd.director_id = d.id ";
-
-            if (!by.isEmpty() && (by.contains("director") || by.contains("title"))) {
-                sql += "WHERE ";
-            }
-            if (by.contains("director")) {
-                sql += "LOWER(d.name) LIKE LOWER(?) ";
-                queries.add("%" + query + "%");
-            }
-            if (by.contains("director") && by.contains("title")) {
-                sql += " OR ";
-            }
-            if (by.contains("title")) {
-                sql += "LOWER(f.name) LIKE LOWER(?) ";
-                queries.add("%" + query + "%");
-            }
-
-            sql += "GROUP BY f.id, m.name "
-                    + "ORDER BY likes_count DESC";
-
-            List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), queries.toArray());
+            FilmQuery filter = filterQuery(query, by);
+            List<Film> films = jdbcTemplate.query(filter.sql(), (rs, rowNum) -> mapRowToFilm(rs), filter.params());
 
             if (films.isEmpty()) return films;
 
-            Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
-
-            Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-            Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
-            Map<Integer, LinkedHashSet<Director>> directorsByFilmId = loadDirectors(filmIds);
-
-            for (Film film : films) {
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-                film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-                film.setDirectors(directorsByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
-            }
+            hydrate(films, FilmFields.FULL);
             return films;
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while getting films by director, title", e);
         }
     }
 
+    private FilmQuery filterQuery(String query, List<String> by) {
+        List<String> queries = new ArrayList<>();
+
+        String sql = "SELECT f.*, m.name as mpa_name, "
+                + "COUNT(fl.user_id) as likes_count "
+                + "FROM films f "
+                + "LEFT JOIN mpa_ratings m ON f.mpa_rating_id = m.id "
+                + "LEFT JOIN film_likes fl ON f.id = fl.film_id "
+                + "LEFT JOIN film_directors fd ON f.id = fd.film_id "
+                + "LEFT JOIN directors d ON fd.director_id = d.id ";
+
+        if (!by.isEmpty() && (by.contains("director") || by.contains("title"))) {
+            sql += "WHERE ";
+        }
+        if (by.contains("director")) {
+            sql += "LOWER(d.name) LIKE LOWER(?) ";
+            queries.add("%" + query + "%");
+        }
+        if (by.contains("director") && by.contains("title")) {
+            sql += " OR ";
+        }
+        if (by.contains("title")) {
+            sql += "LOWER(f.name) LIKE LOWER(?) ";
+            queries.add("%" + query + "%");
+        }
+
+        sql += "GROUP BY f.id, m.name "
+                + "ORDER BY likes_count DESC";
+        return new FilmQuery(sql, queries.toArray());
+    }
+
     //по задаче рекомендации
     @Override
     public List<Film> getRecommendedFilms(int userId) {
+        return getRecommendedFilms(userId, FilmFields.FULL);
+    }
+
+    @Override
+    public List<Film> getRecommendedFilms(int userId, FilmFields fields) {
         try {
             // Проверка, есть ли вообще лайки у пользователя
             String userHasLikesSql = "SELECT COUNT(*) FROM film_likes WHERE user_id = ?";
@@ -479,20 +883,13 @@ public class FilmDbStorage implements FilmStorage {
                 return List.of();
             }
 
-            // Загружаем жанры и лайки для всех рекомендованных фильмов
-            Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
-            Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-            Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
-            Map<Integer, LinkedHashSet<Director>> directorsByFilmId = loadDirectors(filmIds);
-
-            for (Film film : films) {
-                film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-                film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-                film.setDirectors(directorsByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
-            }
+            // Загружаем жанры, лайки и режиссёров для всех рекомендованных фильмов
+            hydrate(films, fields);
 
             return films;
 
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("Error in getRecommendedFilms: " + e.getMessage());
             e.printStackTrace();
@@ -503,17 +900,30 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public void deleteFilm(int id) {
         try {
-            // Удаляем лайки фильма
-            String deleteLikesSql = "DELETE FROM film_likes WHERE film_id = ?";
-            jdbcTemplate.update(deleteLikesSql, id);
-
-            // Удаляем жанры фильма
-            String deleteGenresSql = "DELETE FROM film_genres WHERE film_id = ?";
-            jdbcTemplate.update(deleteGenresSql, id);
-
-            // Удаляем сам фильм
-            String deleteFilmSql = "DELETE FROM films WHERE id = ?";
-            jdbcTemplate.update(deleteFilmSql, id);
+            popularity.write(() -> {
+                // ещё не сброшенные лайки фильма больше не нужны, из индексов фильм уходит целиком
+                pendingLikes.discardFilm(id);
+
+                // Удаляем лайки фильма
+                String deleteLikesSql = "DELETE FROM film_likes WHERE film_id = ?";
+                jdbcTemplate.update(deleteLikesSql, id);
+
+                // Удаляем жанры фильма
+                String deleteGenresSql = "DELETE FROM film_genres WHERE film_id = ?";
+                jdbcTemplate.update(deleteGenresSql, id);
+
+                // Удаляем сам фильм
+                String deleteFilmSql = "DELETE FROM films WHERE id = ?";
+                jdbcTemplate.update(deleteFilmSql, id);
+                popularity.filmRemoved(id);
+                trending.filmRemoved(id);
+            });
+            knownIds.removed(id);
+            filmCache.invalidate(id);
+            // отзывы фильма удаляются каскадом
+            versions.bump(Entity.FILMS, Entity.REVIEWS);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (DataAccessException e) {
             throw new RuntimeException("Database error while deleting film", e);
         }
@@ -521,6 +931,11 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public List<Film> getCommonFilms(int userId, int friendId) {
+        return getCommonFilms(userId, friendId, FilmFields.FULL);
+    }
+
+    @Override
+    public List<Film> getCommonFilms(int userId, int friendId, FilmFields fields) {
         String sql = """
                 SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_rating_id, m.name AS mpa_name, COUNT(fl1.user_id) AS cnt
                 FROM films f
@@ -536,16 +951,34 @@ public class FilmDbStorage implements FilmStorage {
 
         if (films.isEmpty()) return films;
 
-        Set<Integer> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
+        hydrate(films, fields);
+        return films;
+    }
 
-        Map<Integer, List<Genre>> genresByFilmId = getGenresForFilmIds(filmIds);
-        Map<Integer, List<Integer>> likesByFilmId = getLikesForFilmIds(filmIds);
+    // order — порядок id, если его задаёт не сам запрос
+    private record FilmQuery(String sql, Object[] params, List<Integer> order) {
+        private FilmQuery(String sql, Object[] params) {
+            this(sql, params, null);
+        }
+    }
 
-        for (Film film : films) {
-            film.setGenres(genresByFilmId.getOrDefault(film.getId(), new ArrayList<>()));
-            film.setLikes(new HashSet<>(likesByFilmId.getOrDefault(film.getId(), Collections.emptyList())));
-            film.setDirectors(loadDirectorsById(film.getId()));
+    private record FilmRow(int id, String name, String description, LocalDate releaseDate, int duration, Mpa mpa) {
+    }
+
+    // карта null - связь не загружалась, и у фильма она тоже null
+    private record Relations(Map<Integer, List<Genre>> genres,
+                             Map<Integer, List<Integer>> likes,
+                             Map<Integer, LinkedHashSet<Director>> directors) {
+        List<Genre> genresOf(int filmId) {
+            return genres == null ? null : genres.getOrDefault(filmId, new ArrayList<>());
+        }
+
+        List<Integer> likesOf(int filmId) {
+            return likes == null ? null : likes.getOrDefault(filmId, List.of());
+        }
+
+        LinkedHashSet<Director> directorsOf(int filmId) {
+            return directors == null ? null : directors.getOrDefault(filmId, new LinkedHashSet<>());
         }
-        return films;
     }
 }
\ No newline at end of file
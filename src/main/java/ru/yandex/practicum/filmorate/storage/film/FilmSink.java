@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+// Приёмник фильмов для потоковой выдачи: хранилище передаёт поля фильма по одному,
+// не собирая объекты Film и их коллекции. Объекты Mpa, Genre и Director могут быть общими
+// для разных фильмов, изменять их нельзя. Связь, которая не загружалась (см. FilmFields), передаётся null.
+@FunctionalInterface
+public interface FilmSink {
+    void film(int id, String name, String description, LocalDate releaseDate, int duration, Mpa mpa,
+              Collection<Genre> genres, Collection<Integer> likes, Collection<Director> directors);
+
+    default void film(Film film) {
+        film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
+                film.getMpa(), film.getGenres(), film.getLikes(), film.getDirectors());
+    }
+}
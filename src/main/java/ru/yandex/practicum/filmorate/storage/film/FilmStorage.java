@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
 
 import java.util.List;
 import java.util.Optional;
@@ -16,9 +17,11 @@ public interface FilmStorage {
 
     List<Film> getAllFilms();
 
-    void addLike(int filmId, int userId);
+    // false - ничего не изменилось: лайк уже был или его не было. С отложенной записью лайков
+    // сравнение идёт с ещё не сброшенными операциями, а не с БД
+    boolean addLike(int filmId, int userId);
 
-    void removeLike(int filmId, int userId);
+    boolean removeLike(int filmId, int userId);
 
     List<Film> getRecommendedFilms(int userId); //по задаче рекомендации
 
@@ -30,4 +33,60 @@ public interface FilmStorage {
 
     List<Film> getCommonFilms(int userId, int friendId); //по "Общим фильмам"
 
+    List<Film> getTrendingFilms(int count);
+
+    List<Film> getFilmsByIds(List<Integer> ids);
+
+    List<Film> getFilmsByDirectorSorted(int directorId, String sortBy); // sortBy: likes или year
+
+    // потоковая выдача больших списков; по умолчанию через обычный список
+    default void streamAllFilms(FilmSink sink) {
+        getAllFilms().forEach(sink::film);
+    }
+
+    default void streamPopularFilms(int count, Integer genreId, Integer year, FilmSink sink) {
+        getPopularFilms(count, genreId, year).forEach(sink::film);
+    }
+
+    default void streamFilmsByFilter(String query, List<String> by, FilmSink sink) {
+        getFilmsByFilter(query, by).forEach(sink::film);
+    }
+
+    // только нужные связи; хранилище без выборочной загрузки отдаёт все
+    default Film getFilmById(int id, FilmFields fields) {
+        return getFilmById(id);
+    }
+
+    default List<Film> getFilmsByIds(List<Integer> ids, FilmFields fields) {
+        return getFilmsByIds(ids);
+    }
+
+    default List<Film> getTrendingFilms(int count, FilmFields fields) {
+        return getTrendingFilms(count);
+    }
+
+    default List<Film> getFilmsByDirectorSorted(int directorId, String sortBy, FilmFields fields) {
+        return getFilmsByDirectorSorted(directorId, sortBy);
+    }
+
+    default List<Film> getCommonFilms(int userId, int friendId, FilmFields fields) {
+        return getCommonFilms(userId, friendId);
+    }
+
+    default List<Film> getRecommendedFilms(int userId, FilmFields fields) {
+        return getRecommendedFilms(userId);
+    }
+
+    default void streamAllFilms(FilmFields fields, FilmSink sink) {
+        streamAllFilms(sink);
+    }
+
+    default void streamPopularFilms(int count, Integer genreId, Integer year, FilmFields fields, FilmSink sink) {
+        streamPopularFilms(count, genreId, year, sink);
+    }
+
+    default void streamFilmsByFilter(String query, List<String> by, FilmFields fields, FilmSink sink) {
+        streamFilmsByFilter(query, by, sink);
+    }
+
 }
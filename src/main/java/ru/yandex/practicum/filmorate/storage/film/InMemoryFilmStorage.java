@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
@@ -7,7 +8,9 @@ import ru.yandex.practicum.filmorate.model.Mpa;
 import java.util.*;
 import java.util.stream.Collectors;
 
+// в быстром старте не создаётся: сервисы работают с хранилищами в БД
 @Component
+@Profile("!fast")
 public class InMemoryFilmStorage implements FilmStorage {
     private final Map<Integer, Film> films = new HashMap<>();
     private int nextId = 1;
@@ -79,19 +82,15 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public void addLike(int filmId, int userId) {
+    public boolean addLike(int filmId, int userId) {
         Film film = films.get(filmId);
-        if (film != null) {
-            film.getLikes().add(userId);
-        }
+        return film != null && film.getLikes().add(userId);
     }
 
     @Override
-    public void removeLike(int filmId, int userId) {
+    public boolean removeLike(int filmId, int userId) {
         Film film = films.get(filmId);
-        if (film != null) {
-            film.getLikes().remove(userId);
-        }
+        return film != null && film.getLikes().remove(userId);
     }
 
     @Override
@@ -161,4 +160,29 @@ public class InMemoryFilmStorage implements FilmStorage {
         return List.of();
     }
 
+    @Override
+    public List<Film> getTrendingFilms(int count) {
+        throw new RuntimeException("Not Implemented");
+    }
+
+    @Override
+    public List<Film> getFilmsByDirectorSorted(int directorId, String sortBy) {
+        Comparator<Film> order = "likes".equalsIgnoreCase(sortBy)
+                ? Comparator.comparingInt((Film f) -> -f.getLikes().size())
+                : Comparator.comparing(Film::getReleaseDate);
+        return films.values().stream()
+                .filter(f -> f.getDirectors() != null
+                        && f.getDirectors().stream().anyMatch(d -> d.getId() == directorId))
+                .sorted(order.thenComparingInt(Film::getId))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Integer> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
 }
\ No newline at end of file
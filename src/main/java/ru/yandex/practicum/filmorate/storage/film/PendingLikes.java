@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.WriteBehind;
+import ru.yandex.practicum.filmorate.storage.WriteBehindBuffer;
+import ru.yandex.practicum.filmorate.storage.WriteBehindBuffer.Change;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Лайки при включённой отложенной записи (filmorate.write-behind.enabled). Лайк запоминается без
+// обращения к БД, а в film_likes изменения уходят пачками MERGE/DELETE по таймеру. Был ли лайк в БД,
+// выясняется только при сбросе, поэтому рейтинги и тренды меняются тогда же, вместе с записью в БД,
+// и отстают от лайков не больше чем на интервал сброса. Лайки фильмов в ответах учитывают ещё
+// не сброшенные изменения; рекомендации и общие фильмы считаются запросами по film_likes
+// и видят их только после сброса.
+@Component
+public class PendingLikes {
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularity;
+    private final TrendingIndex trending;
+    private final CatalogVersions versions;
+    private final EntityCache<Integer, Film> filmCache;
+    // null - отложенная запись выключена
+    private final WriteBehindBuffer<Key, Instant> buffer;
+
+    public PendingLikes(JdbcTemplate jdbcTemplate, WriteBehind writeBehind, PopularityIndex popularity,
+                        TrendingIndex trending, CatalogVersions versions) {
+        this(jdbcTemplate, writeBehind, popularity, trending, versions, EntityCaches.disabled());
+    }
+
+    @Autowired
+    public PendingLikes(JdbcTemplate jdbcTemplate, WriteBehind writeBehind, PopularityIndex popularity,
+                        TrendingIndex trending, CatalogVersions versions, EntityCaches caches) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularity = popularity;
+        this.trending = trending;
+        this.versions = versions;
+        this.filmCache = caches.films();
+        this.buffer = writeBehind.isEnabled()
+                // сброс правит рейтинги вслед за БД: сборка индекса не должна прочитать БД между ними
+                ? writeBehind.buffer("film_likes", this::likedAt, this::write, this::rejected, popularity::write)
+                : null;
+        if (buffer != null) {
+            // иначе сборка индекса из БД потеряет ещё не сброшенные лайки
+            popularity.beforeRebuild(buffer::flush);
+        }
+    }
+
+    public static PendingLikes disabled() {
+        return new PendingLikes(null, WriteBehind.disabled(), PopularityIndex.disabled(), TrendingIndex.detached(),
+                new CatalogVersions());
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    // false - лайк уже поставлен
+    public boolean add(int filmId, int userId, Instant likedAt) {
+        return buffer.add(new Key(filmId, userId), likedAt);
+    }
+
+    // false - лайк уже снят
+    public boolean remove(int filmId, int userId) {
+        return buffer.remove(new Key(filmId, userId));
+    }
+
+    // поправляет лайки, прочитанные из БД, на ещё не сброшенные изменения
+    public void overlay(Set<Integer> filmIds, Map<Integer, List<Integer>> likes) {
+        if (buffer == null || buffer.isEmpty()) {
+            return;
+        }
+        buffer.forEachPending((key, likedAt) -> {
+            if (!filmIds.contains(key.filmId())) {
+                return;
+            }
+            List<Integer> users = likes.computeIfAbsent(key.filmId(), k -> new ArrayList<>());
+            if (likedAt != null) {
+                if (!users.contains(key.userId())) {
+                    users.add(key.userId());
+                }
+            } else {
+                users.remove(Integer.valueOf(key.userId()));
+            }
+        });
+    }
+
+    // выброшенные лайки в БД и в рейтинги не попадали
+    public List<Key> discardFilm(int filmId) {
+        return buffer == null ? List.of() : buffer.discard(key -> key.filmId() == filmId);
+    }
+
+    public List<Key> discardUser(int userId) {
+        return buffer == null ? List.of() : buffer.discard(key -> key.userId() == userId);
+    }
+
+    @PreDestroy
+    public void flush() {
+        if (buffer != null) {
+            buffer.flush();
+        }
+    }
+
+    // время лайков пачки ключей одним запросом; нет ключа - нет лайка
+    private Map<Key, Instant> likedAt(Collection<Key> keys) {
+        String rows = String.join(", ", Collections.nCopies(keys.size(), "(?, ?)"));
+        Object[] args = keys.stream().flatMap(key -> Stream.of(key.filmId(), key.userId())).toArray();
+        Map<Key, Instant> found = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, user_id, created_at FROM film_likes "
+                + "WHERE (film_id, user_id) IN (" + rows + ")", rs -> {
+            found.put(new Key(rs.getInt("film_id"), rs.getInt("user_id")), rs.getTimestamp("created_at").toInstant());
+        }, args);
+        return found;
+    }
+
+    private void write(List<Change<Key, Instant>> changes) {
+        List<Object[]> merged = new ArrayList<>();
+        List<Object[]> deleted = new ArrayList<>();
+        for (Change<Key, Instant> change : changes) {
+            Key key = change.key();
+            if (change.wanted() != null) {
+                merged.add(new Object[]{key.filmId(), key.userId(), Timestamp.from(change.wanted())});
+            } else {
+                deleted.add(new Object[]{key.filmId(), key.userId()});
+            }
+        }
+        if (!merged.isEmpty()) {
+            jdbcTemplate.batchUpdate("MERGE INTO film_likes (film_id, user_id, created_at) "
+                    + "KEY (film_id, user_id) VALUES (?, ?, ?)", merged);
+        }
+        if (!deleted.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM film_likes WHERE film_id = ? AND user_id = ?", deleted);
+        }
+        // удалённый лайк вычитается из тренда с весом по времени, которое лежало в БД
+        for (Change<Key, Instant> change : changes) {
+            int filmId = change.key().filmId();
+            if (change.isAdd()) {
+                popularity.likeAdded(filmId);
+                trending.likeAdded(filmId, change.wanted());
+            } else {
+                popularity.likeRemoved(filmId);
+                trending.likeRemoved(filmId, change.stored());
+            }
+        }
+    }
+
+    // БД не приняла изменение (например, фильм удалён в обход хранилища): в индексы оно не попало,
+    // а лайки фильма в кэше его уже учитывают
+    private void rejected(List<Change<Key, Instant>> changes) {
+        changes.forEach(change -> filmCache.invalidate(change.key().filmId()));
+        versions.bump(Entity.FILMS);
+    }
+
+    public record Key(int filmId, int userId) {
+    }
+}
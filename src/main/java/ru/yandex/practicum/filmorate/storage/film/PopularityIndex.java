@@ -0,0 +1,405 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Рейтинги популярности в памяти: для каждой пары (жанр, год), а также для «любой жанр» и «любой год»
+// хранится массив id фильмов, отсортированный по числу лайков (при равенстве — по id).
+// Лайки, добавление, изменение и удаление фильмов правят массивы сразу, поэтому
+// GET /films/popular сводится к срезу готового массива.
+// Так же для каждого режиссёра хранятся два порядка его фильмов: по лайкам и по дате выхода
+// (GET /films/director/{id}?sortBy=likes|year).
+//
+// Полная сборка из БД идёт в фоновом потоке: при старте и после invalidate(). Пока индекс не собран,
+// topFilmIds возвращает пустой Optional и хранилище считает рейтинг запросом.
+// Изменения в БД, которые попадают в индекс, выполняются через write(...): сборка ждёт их завершения,
+// чтобы изменение не попало в индекс дважды (из выборки и приращением).
+@Slf4j
+@Component
+@Lazy(false)
+public class PopularityIndex {
+    private static final int ANY = 0;
+    private static final Comparator<FilmEntry> BY_LIKES = Comparator.<FilmEntry>comparingInt(e -> -e.likes)
+            .thenComparingInt(e -> e.id);
+    private static final Comparator<FilmEntry> BY_RELEASE = Comparator.<FilmEntry>comparingLong(e -> e.releaseDay)
+            .thenComparingInt(e -> e.id);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final ExecutorService refresher;
+    private volatile Runnable beforeRebuild = () -> {
+    };
+
+    private volatile boolean ready;
+    // под монитором this
+    private Map<Integer, FilmEntry> films = new HashMap<>();
+    private Map<Long, Bucket> buckets = new HashMap<>();
+    private Map<Integer, Bucket> directorsByLikes = new HashMap<>();
+    private Map<Integer, Bucket> directorsByRelease = new HashMap<>();
+
+    @Autowired
+    public PopularityIndex(JdbcTemplate jdbcTemplate,
+                           @Value("${filmorate.popularity.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.refresher = enabled
+                ? Executors.newSingleThreadExecutor(Thread.ofPlatform().name("popularity-refresh").daemon().factory())
+                : null;
+    }
+
+    // выключенный индекс: рейтинг всегда считается запросом
+    public static PopularityIndex disabled() {
+        return new PopularityIndex(null, false);
+    }
+
+    @PostConstruct
+    public void start() {
+        invalidate();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    // данные поменялись в обход хранилища: индекс выключается до фоновой пересборки
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        ready = false;
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                rebuildScheduled.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось собрать индекс популярности, рейтинг будет считаться запросом", e);
+                }
+            });
+        }
+    }
+
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        gate.writeLock().lock();
+        try {
+            beforeRebuild.run();
+            Map<Integer, FilmEntry> loaded = new HashMap<>();
+            jdbcTemplate.query("SELECT f.id, f.release_date, COUNT(fl.user_id) AS likes FROM films f "
+                    + "LEFT JOIN film_likes fl ON f.id = fl.film_id GROUP BY f.id", rs -> {
+                Date releaseDate = rs.getDate("release_date");
+                int id = rs.getInt("id");
+                loaded.put(id, new FilmEntry(id, releaseDate != null ? releaseDate.toLocalDate() : null,
+                        rs.getInt("likes")));
+            });
+            Map<Integer, List<Integer>> genres = new HashMap<>();
+            jdbcTemplate.query("SELECT film_id, genre_id FROM film_genres", rs -> {
+                genres.computeIfAbsent(rs.getInt("film_id"), k -> new ArrayList<>()).add(rs.getInt("genre_id"));
+            });
+            Map<Integer, List<Integer>> directors = new HashMap<>();
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_directors", rs -> {
+                directors.computeIfAbsent(rs.getInt("film_id"), k -> new ArrayList<>())
+                        .add(rs.getInt("director_id"));
+            });
+
+            Map<Long, List<FilmEntry>> members = new HashMap<>();
+            Map<Integer, List<FilmEntry>> directorMembers = new HashMap<>();
+            for (FilmEntry entry : loaded.values()) {
+                entry.genres = toArray(genres.getOrDefault(entry.id, List.of()));
+                entry.directors = toArray(directors.getOrDefault(entry.id, List.of()));
+                for (long key : keysOf(entry)) {
+                    members.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+                }
+                for (int directorId : entry.directors) {
+                    directorMembers.computeIfAbsent(directorId, k -> new ArrayList<>()).add(entry);
+                }
+            }
+            Map<Long, Bucket> built = new HashMap<>();
+            members.forEach((key, entries) -> built.put(key, new Bucket(BY_LIKES, entries)));
+            Map<Integer, Bucket> builtByLikes = new HashMap<>();
+            Map<Integer, Bucket> builtByRelease = new HashMap<>();
+            directorMembers.forEach((directorId, entries) -> {
+                builtByLikes.put(directorId, new Bucket(BY_LIKES, entries));
+                builtByRelease.put(directorId, new Bucket(BY_RELEASE, entries));
+            });
+
+            synchronized (this) {
+                films = loaded;
+                buckets = built;
+                directorsByLikes = builtByLikes;
+                directorsByRelease = builtByRelease;
+            }
+            ready = true;
+            log.info("Индекс популярности собран: {} фильмов, {} рейтингов за {} мс",
+                    loaded.size(), built.size(), System.currentTimeMillis() - started);
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+
+    // выполняется под блокировкой сборки до чтения из БД, например сброс отложенных лайков
+    public void beforeRebuild(Runnable action) {
+        this.beforeRebuild = action;
+    }
+
+    // изменение БД, отражаемое в индексе; параллельные изменения друг друга не ждут
+    public <T> T write(Supplier<T> change) {
+        gate.readLock().lock();
+        try {
+            return change.get();
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    public void write(Runnable change) {
+        write(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    public Optional<List<Integer>> topFilmIds(int count, Integer genreId, Integer year) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            return Optional.of(slice(buckets.get(key(genreId != null ? genreId : ANY, year != null ? year : ANY)),
+                    count));
+        }
+    }
+
+    // фильмы режиссёра: по убыванию лайков или по дате выхода, при равенстве — по id
+    public Optional<List<Integer>> directorFilmIds(int directorId, boolean byLikes) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            Bucket bucket = (byLikes ? directorsByLikes : directorsByRelease).get(directorId);
+            return Optional.of(slice(bucket, Integer.MAX_VALUE));
+        }
+    }
+
+    private static List<Integer> slice(Bucket bucket, int count) {
+        if (bucket == null) {
+            return List.of();
+        }
+        int size = Math.min(count, bucket.size);
+        List<Integer> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(bucket.ids[i]);
+        }
+        return ids;
+    }
+
+    public synchronized void likeAdded(int filmId) {
+        changeLikes(filmId, 1);
+    }
+
+    public synchronized void likeRemoved(int filmId) {
+        changeLikes(filmId, -1);
+    }
+
+    // новый фильм или изменённые дата выхода, жанры и режиссёры
+    public synchronized void filmSaved(int filmId, LocalDate releaseDate, Collection<Integer> genreIds,
+                                       Collection<Integer> directorIds) {
+        FilmEntry entry = films.get(filmId);
+        if (entry == null) {
+            entry = new FilmEntry(filmId, releaseDate, 0);
+            films.put(filmId, entry);
+        } else {
+            unlink(entry, true);
+            entry.setReleaseDate(releaseDate);
+        }
+        entry.genres = genreIds.stream().distinct().mapToInt(Integer::intValue).toArray();
+        entry.directors = directorIds.stream().distinct().mapToInt(Integer::intValue).toArray();
+        link(entry, true);
+    }
+
+    public synchronized void filmRemoved(int filmId) {
+        FilmEntry entry = films.get(filmId);
+        if (entry == null) {
+            return;
+        }
+        unlink(entry, true);
+        films.remove(filmId);
+    }
+
+    // связи удалённого режиссёра сняты каскадом
+    public synchronized void directorRemoved(int directorId) {
+        Bucket bucket = directorsByLikes.remove(directorId);
+        directorsByRelease.remove(directorId);
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 0; i < bucket.size; i++) {
+            FilmEntry entry = films.get(bucket.ids[i]);
+            entry.directors = Arrays.stream(entry.directors).filter(id -> id != directorId).toArray();
+        }
+    }
+
+    private void changeLikes(int filmId, int delta) {
+        FilmEntry entry = films.get(filmId);
+        if (entry == null) {
+            return;
+        }
+        // порядок по дате выхода от лайков не зависит
+        unlink(entry, false);
+        entry.likes = Math.max(0, entry.likes + delta);
+        link(entry, false);
+    }
+
+    private void unlink(FilmEntry entry, boolean withRelease) {
+        for (long key : keysOf(entry)) {
+            bucket(key).remove(entry);
+        }
+        for (int directorId : entry.directors) {
+            directorBucket(directorsByLikes, directorId, BY_LIKES).remove(entry);
+            if (withRelease) {
+                directorBucket(directorsByRelease, directorId, BY_RELEASE).remove(entry);
+            }
+        }
+    }
+
+    private void link(FilmEntry entry, boolean withRelease) {
+        for (long key : keysOf(entry)) {
+            bucket(key).insert(entry);
+        }
+        for (int directorId : entry.directors) {
+            directorBucket(directorsByLikes, directorId, BY_LIKES).insert(entry);
+            if (withRelease) {
+                directorBucket(directorsByRelease, directorId, BY_RELEASE).insert(entry);
+            }
+        }
+    }
+
+    private Bucket bucket(long key) {
+        return buckets.computeIfAbsent(key, k -> new Bucket(BY_LIKES, List.of()));
+    }
+
+    private Bucket directorBucket(Map<Integer, Bucket> index, int directorId, Comparator<FilmEntry> order) {
+        return index.computeIfAbsent(directorId, k -> new Bucket(order, List.of()));
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static long[] keysOf(FilmEntry entry) {
+        int perGenre = entry.year != ANY ? 2 : 1;
+        long[] keys = new long[perGenre * (entry.genres.length + 1)];
+        int i = 0;
+        keys[i++] = key(ANY, ANY);
+        if (entry.year != ANY) {
+            keys[i++] = key(ANY, entry.year);
+        }
+        for (int genreId : entry.genres) {
+            keys[i++] = key(genreId, ANY);
+            if (entry.year != ANY) {
+                keys[i++] = key(genreId, entry.year);
+            }
+        }
+        return keys;
+    }
+
+    private static long key(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private static final class FilmEntry {
+        private final int id;
+        private int year;
+        // дата выхода в днях от эпохи; фильмы без даты идут первыми, как NULL в ORDER BY
+        private long releaseDay;
+        private int likes;
+        private int[] genres = new int[0];
+        private int[] directors = new int[0];
+
+        private FilmEntry(int id, LocalDate releaseDate, int likes) {
+            this.id = id;
+            this.likes = likes;
+            setReleaseDate(releaseDate);
+        }
+
+        private void setReleaseDate(LocalDate releaseDate) {
+            year = releaseDate != null ? releaseDate.getYear() : ANY;
+            releaseDay = releaseDate != null ? releaseDate.toEpochDay() : Long.MIN_VALUE;
+        }
+    }
+
+    // отсортированный массив id; позиция фильма ищется двоичным поиском по порядку order
+    private final class Bucket {
+        private final Comparator<FilmEntry> order;
+        private int[] ids;
+        private int size;
+
+        private Bucket(Comparator<FilmEntry> order, List<FilmEntry> entries) {
+            this.order = order;
+            this.ids = entries.stream().sorted(order).mapToInt(e -> e.id).toArray();
+            this.size = ids.length;
+        }
+
+        private void insert(FilmEntry entry) {
+            int position = search(entry);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = entry.id;
+            size++;
+        }
+
+        private void remove(FilmEntry entry) {
+            int position = search(entry);
+            if (position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        private int search(FilmEntry entry) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = order.compare(films.get(ids[mid]), entry);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
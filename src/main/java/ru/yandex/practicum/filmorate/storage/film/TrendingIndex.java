@@ -0,0 +1,203 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Счёт «в тренде» с экспоненциальным затуханием: каждый лайк весит exp(-(сейчас - время лайка) / tau),
+// за период полураспада вес падает вдвое. Хранится value = сумма exp((время лайка - landmark) / tau),
+// тогда текущий счёт = value * exp(-(сейчас - landmark) / tau) и при лайке меняется только value.
+// Счётчики фильмов обновляются CAS-ом без блокировок. Периодический проход переносит landmark
+// на текущее время, чтобы экспоненты не росли, и выбрасывает остывшие фильмы.
+@Slf4j
+@Component
+@Lazy(false)
+public class TrendingIndex {
+    // счёт ниже порога — меньше сотой доли одного свежего лайка
+    private static final double EPSILON = 0.01;
+    private static final Score DEAD = new Score(0, -1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Clock clock;
+    private final double tauMillis;
+    private final Duration halfLife;
+    private final Duration sweepInterval;
+    private final ConcurrentHashMap<Integer, AtomicReference<Score>> scores = new ConcurrentHashMap<>();
+    private volatile long landmark;
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public TrendingIndex(JdbcTemplate jdbcTemplate,
+                         @Value("${filmorate.trending.half-life:3d}") Duration halfLife,
+                         @Value("${filmorate.trending.sweep-interval:1m}") Duration sweepInterval) {
+        this(jdbcTemplate, halfLife, sweepInterval, Clock.systemUTC());
+    }
+
+    public TrendingIndex(JdbcTemplate jdbcTemplate, Duration halfLife, Duration sweepInterval, Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.halfLife = halfLife;
+        this.sweepInterval = sweepInterval;
+        this.tauMillis = halfLife.toMillis() / Math.log(2);
+        this.landmark = clock.millis();
+    }
+
+    // без загрузки из БД и фонового прохода
+    public static TrendingIndex detached() {
+        return new TrendingIndex(null, Duration.ofDays(3), Duration.ofMinutes(1), Clock.systemUTC());
+    }
+
+    @PostConstruct
+    public void start() {
+        reload();
+        sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("trending-sweep").daemon().factory());
+        long period = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    public Instant now() {
+        return clock.instant();
+    }
+
+    // лайки старше 20 периодов полураспада весят меньше миллионной доли и не загружаются;
+    // вызывается при старте и после заливки данных в обход хранилища, без параллельных лайков
+    public void reload() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        scores.clear();
+        landmark = clock.millis();
+        Timestamp cutoff = new Timestamp(landmark - halfLife.toMillis() * 20);
+        int[] loaded = {0};
+        jdbcTemplate.query("SELECT film_id, created_at FROM film_likes WHERE created_at >= ?", rs -> {
+            add(rs.getInt("film_id"), rs.getTimestamp("created_at").getTime(), 1);
+            loaded[0]++;
+        }, cutoff);
+        log.info("Тренды загружены: {} лайков, {} фильмов за {} мс",
+                loaded[0], scores.size(), System.currentTimeMillis() - started);
+    }
+
+    public void likeAdded(int filmId, Instant likedAt) {
+        add(filmId, likedAt.toEpochMilli(), 1);
+    }
+
+    public void likeRemoved(int filmId, Instant likedAt) {
+        add(filmId, likedAt.toEpochMilli(), -1);
+    }
+
+    public void filmRemoved(int filmId) {
+        AtomicReference<Score> ref = scores.remove(filmId);
+        if (ref != null) {
+            ref.set(DEAD);
+        }
+    }
+
+    // топ-N по текущему счёту: проход по счётчикам в памяти с кучей на N элементов
+    public List<Integer> topFilmIds(int count) {
+        if (count <= 0) {
+            return List.of();
+        }
+        long now = clock.millis();
+        Comparator<Ranked> worstFirst = Comparator.comparingDouble(Ranked::score)
+                .thenComparing(Comparator.comparingInt(Ranked::filmId).reversed());
+        PriorityQueue<Ranked> top = new PriorityQueue<>(Math.min(count, 1024) + 1, worstFirst);
+        scores.forEach((filmId, ref) -> {
+            Score score = ref.get();
+            if (score == DEAD || score.value() <= 0) {
+                return;
+            }
+            double current = score.value() * Math.exp((score.landmark() - now) / tauMillis);
+            if (current < EPSILON) {
+                return;
+            }
+            top.add(new Ranked(filmId, current));
+            if (top.size() > count) {
+                top.poll();
+            }
+        });
+
+        List<Ranked> ranked = new ArrayList<>(top);
+        ranked.sort(worstFirst.reversed());
+        return ranked.stream().map(Ranked::filmId).toList();
+    }
+
+    public double score(int filmId) {
+        AtomicReference<Score> ref = scores.get(filmId);
+        Score score = ref != null ? ref.get() : DEAD;
+        if (score == DEAD) {
+            return 0;
+        }
+        return Math.max(0, score.value() * Math.exp((score.landmark() - clock.millis()) / tauMillis));
+    }
+
+    void sweep() {
+        long next = clock.millis();
+        scores.forEach((filmId, ref) -> {
+            while (true) {
+                Score current = ref.get();
+                if (current == DEAD) {
+                    return;
+                }
+                double value = current.value() * Math.exp((current.landmark() - next) / tauMillis);
+                if (value < EPSILON) {
+                    if (ref.compareAndSet(current, DEAD)) {
+                        scores.remove(filmId, ref);
+                        return;
+                    }
+                } else if (ref.compareAndSet(current, new Score(next, value))) {
+                    return;
+                }
+            }
+        });
+        landmark = next;
+    }
+
+    private void add(int filmId, long likedAt, int sign) {
+        while (true) {
+            AtomicReference<Score> ref = scores.computeIfAbsent(filmId, id -> new AtomicReference<>(
+                    new Score(landmark, 0)));
+            Score current = ref.get();
+            if (current == DEAD) {
+                // счётчик только что выброшен проходом, заводим новый
+                scores.remove(filmId, ref);
+                continue;
+            }
+            double weight = Math.exp((likedAt - current.landmark()) / tauMillis);
+            Score next = new Score(current.landmark(), Math.max(0, current.value() + sign * weight));
+            if (ref.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private record Score(long landmark, double value) {
+    }
+
+    private record Ranked(int filmId, double score) {
+    }
+}
@@ -1,11 +1,14 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Review;
@@ -17,10 +20,20 @@ import java.sql.Statement;
 import java.util.List;
 
 @Repository
-@RequiredArgsConstructor
 public class ReviewDbStorage implements ReviewStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final CatalogVersions versions;
+
+    public ReviewDbStorage(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, new CatalogVersions());
+    }
+
+    @Autowired
+    public ReviewDbStorage(JdbcTemplate jdbcTemplate, CatalogVersions versions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+    }
 
     private Review mapRow(ResultSet rs, int rowNum) throws SQLException {
         Review r = new Review();
@@ -73,6 +86,7 @@ public class ReviewDbStorage implements ReviewStorage {
         }, keyHolder);
 
         long reviewId = keyHolder.getKey().longValue();
+        versions.bump(Entity.REVIEWS);
         return getReviewById(reviewId);
     }
 
@@ -90,6 +104,7 @@ public class ReviewDbStorage implements ReviewStorage {
 
         jdbcTemplate.update("UPDATE reviews SET content=?, is_positive=? WHERE review_id=?",
                 review.getContent(), review.getIsPositive(), review.getReviewId());
+        versions.bump(Entity.REVIEWS);
 
         return getReviewById(review.getReviewId());
     }
@@ -102,6 +117,7 @@ public class ReviewDbStorage implements ReviewStorage {
             throw new NotFoundException("Отзыв с id " + reviewId + " не найден");
         }
         jdbcTemplate.update("DELETE FROM reviews WHERE review_id=?", reviewId);
+        versions.bump(Entity.REVIEWS);
     }
 
     @Override
@@ -149,9 +165,13 @@ public class ReviewDbStorage implements ReviewStorage {
                         reviewId, userId);
                 jdbcTemplate.update("UPDATE reviews SET useful = useful + 1 WHERE review_id = ?", reviewId);
             }
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             // Игнорируем дубликаты
         }
+        // часть изменений могла пройти и до ошибки
+        versions.bump(Entity.REVIEWS);
     }
 
     @Override
@@ -177,9 +197,12 @@ public class ReviewDbStorage implements ReviewStorage {
                         reviewId, userId);
                 jdbcTemplate.update("UPDATE reviews SET useful = useful - 1 WHERE review_id = ?", reviewId);
             }
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             // Игнорируем дубликаты
         }
+        versions.bump(Entity.REVIEWS);
     }
 
     @Override
@@ -189,6 +212,7 @@ public class ReviewDbStorage implements ReviewStorage {
                 reviewId, userId);
         if (deleted > 0) {
             jdbcTemplate.update("UPDATE reviews SET useful = useful - 1 WHERE review_id=?", reviewId);
+            versions.bump(Entity.REVIEWS);
         }
     }
 
@@ -199,6 +223,7 @@ public class ReviewDbStorage implements ReviewStorage {
                 reviewId, userId);
         if (deleted > 0) {
             jdbcTemplate.update("UPDATE reviews SET useful = useful + 1 WHERE review_id=?", reviewId);
+            versions.bump(Entity.REVIEWS);
         }
     }
 }
\ No newline at end of file
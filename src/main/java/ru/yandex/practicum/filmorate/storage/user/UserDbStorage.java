@@ -1,24 +1,87 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+import ru.yandex.practicum.filmorate.cache.EntityCache;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.cache.KnownIds;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.WriteBehind;
+import ru.yandex.practicum.filmorate.storage.WriteBehindBuffer;
+import ru.yandex.practicum.filmorate.storage.WriteBehindBuffer.Change;
+import ru.yandex.practicum.filmorate.storage.film.PendingLikes;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
 
 import java.sql.*;
 import java.sql.Date;
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Repository
 public class UserDbStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final HydrationExecutor hydration;
+    private final CatalogVersions versions;
+    private final PopularityIndex popularity;
+    private final TrendingIndex trending;
+    private final PendingLikes pendingLikes;
+    // отложенная запись дружбы, null - выключена
+    private final WriteBehindBuffer<Friendship, Boolean> pendingFriendships;
+    private final EntityCache<Integer, User> userCache;
+    private final KnownIds knownIds;
+    // лайки удалённого пользователя пропадают и у фильмов
+    private final EntityCache<Integer, Film> filmCache;
 
-    @Autowired
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, HydrationExecutor.sequential(), new CatalogVersions(), PopularityIndex.disabled(),
+                TrendingIndex.detached());
+    }
+
+    public UserDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending) {
+        this(jdbcTemplate, hydration, versions, popularity, trending, WriteBehind.disabled(),
+                PendingLikes.disabled());
+    }
+
+    public UserDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending, WriteBehind writeBehind,
+                         PendingLikes pendingLikes) {
+        this(jdbcTemplate, hydration, versions, popularity, trending, writeBehind, pendingLikes,
+                EntityCaches.disabled());
+    }
+
+    @Autowired
+    public UserDbStorage(JdbcTemplate jdbcTemplate, HydrationExecutor hydration, CatalogVersions versions,
+                         PopularityIndex popularity, TrendingIndex trending, WriteBehind writeBehind,
+                         PendingLikes pendingLikes, EntityCaches caches) {
         this.jdbcTemplate = jdbcTemplate;
+        this.hydration = hydration;
+        this.versions = versions;
+        this.popularity = popularity;
+        this.trending = trending;
+        this.pendingLikes = pendingLikes;
+        this.userCache = caches.users();
+        this.knownIds = caches.userIds();
+        this.filmCache = caches.films();
+        // отвергнутая БД дружба пропадает из списка друзей, закэшированный список устарел
+        this.pendingFriendships = writeBehind.isEnabled()
+                ? writeBehind.buffer("friendships", this::existingFriendships, this::writeFriendships,
+                        rejected -> rejected.forEach(change -> userCache.invalidate(change.key().userId())))
+                : null;
     }
 
     @Override
@@ -36,6 +99,7 @@ public class UserDbStorage implements UserStorage {
         }, keyHolder);
 
         user.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
+        knownIds.added(user.getId());
         return user;
     }
 
@@ -49,25 +113,71 @@ public class UserDbStorage implements UserStorage {
                 user.getName(),
                 user.getBirthday(),
                 user.getId());
+        userCache.invalidate(user.getId());
+        versions.bump(Entity.USERS);
 
         return user;
     }
 
     @Override
     public User getUserById(int id) {
+        return getUserById(id, UserFields.FULL);
+    }
+
+    @Override
+    public User getUserById(int id, UserFields fields) {
+        if (!knownIds.mightExist(id)) {
+            return null;
+        }
+        User cached = userCache.getIfPresent(id, user -> !fields.friends() || user.getFriends() != null);
+        if (cached != null) {
+            return project(cached, fields);
+        }
+        long stamp = userCache.stamp(id);
         String sql = "SELECT * FROM users WHERE id = ?";
 
+        // id известен заранее, поэтому друзей можно грузить одновременно с самим пользователем
+        Supplier<Set<Integer>> friends = fields.friends() ? hydration.fork(() -> getUserFriends(id)) : () -> null;
         List<User> users = jdbcTemplate.query(sql, this::mapRowToUser, id);
         if (users.isEmpty()) {
             return null;
         }
         User user = users.get(0);
-        user.setFriends(getUserFriends(user.getId()));
+        user.setFriends(friends.get());
+        userCache.put(id, EntityCaches.frozen(user), stamp);
         return user;
     }
 
+    // пользователь из кэша; друзья - только если запрошены
+    private static User project(User cached, UserFields fields) {
+        User user = EntityCaches.shell(cached);
+        if (!fields.friends()) {
+            user.setFriends(null);
+        }
+        return user;
+    }
+
+    // дружба односторонняя: меняется только список друзей userId
+    private void friendshipChanged(int userId, int friendId, boolean added) {
+        userCache.update(userId, cached -> {
+            if (cached.getFriends() == null) {
+                return cached;
+            }
+            User user = EntityCaches.shell(cached);
+            if (added) {
+                user.getFriends().add(friendId);
+            } else {
+                user.getFriends().remove(friendId);
+            }
+            return EntityCaches.frozen(user);
+        });
+    }
+
     @Override
     public Optional<User> findUserById(int id) {
+        if (!knownIds.mightExist(id)) {
+            return Optional.empty();
+        }
         String sql = "SELECT * FROM users WHERE id = ?";
 
         List<User> users = jdbcTemplate.query(sql, this::mapRowToUser, id);
@@ -76,21 +186,90 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> getAllUsers() {
+        return getAllUsers(UserFields.FULL);
+    }
+
+    @Override
+    public List<User> getAllUsers(UserFields fields) {
         String sql = "SELECT * FROM users";
+        Supplier<Map<Integer, Set<Integer>>> friends = fields.friends()
+                ? hydration.fork(this::getAllFriends) : () -> null;
         List<User> users = jdbcTemplate.query(sql, this::mapRowToUser);
-        Map<Integer, Set<Integer>> allFriends = getAllFriends();
-        for (User user : users) {
-            user.setFriends(allFriends.getOrDefault(user.getId(), new HashSet<>()));
+        setFriends(users, friends.get());
+
+        return users;
+    }
+
+    @Override
+    public List<User> getUsersByIds(List<Integer> ids) {
+        return getUsersByIds(ids, UserFields.FULL);
+    }
+
+    // два запроса на любое число промахов кэша: пользователи и их друзья (если нужны)
+    @Override
+    public List<User> getUsersByIds(List<Integer> ids, UserFields fields) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, User> found = new HashMap<>();
+        Map<Integer, Long> missing = new LinkedHashMap<>();
+        for (int id : ids) {
+            if (found.containsKey(id) || missing.containsKey(id) || !knownIds.mightExist(id)) {
+                continue;
+            }
+            User cached = userCache.getIfPresent(id, user -> !fields.friends() || user.getFriends() != null);
+            if (cached != null) {
+                found.put(id, project(cached, fields));
+            } else {
+                missing.put(id, userCache.stamp(id));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Integer> missingIds = new ArrayList<>(missing.keySet());
+            String inSql = String.join(",", Collections.nCopies(missingIds.size(), "?"));
+            Supplier<Map<Integer, Set<Integer>>> friends = fields.friends()
+                    ? hydration.fork(() -> getFriendsOf(missingIds, inSql)) : () -> null;
+            List<User> loaded = jdbcTemplate.query("SELECT * FROM users WHERE id IN (" + inSql + ")",
+                    this::mapRowToUser, missingIds.toArray());
+            setFriends(loaded, friends.get());
+            for (User user : loaded) {
+                userCache.put(user.getId(), EntityCaches.frozen(user), missing.get(user.getId()));
+                found.put(user.getId(), user);
+            }
         }
 
+        List<User> users = new ArrayList<>();
+        for (int id : ids) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
         return users;
     }
 
+    // friendsByUser null - друзья не загружались
+    private static void setFriends(List<User> users, Map<Integer, Set<Integer>> friendsByUser) {
+        for (User user : users) {
+            user.setFriends(friendsByUser == null ? null : friendsByUser.getOrDefault(user.getId(), new HashSet<>()));
+        }
+    }
+
     @Override
     public void addFriend(int userId, int friendId) {
+        if (pendingFriendships != null) {
+            pendingFriendships.add(new Friendship(userId, friendId), Boolean.TRUE);
+            friendshipChanged(userId, friendId, true);
+            versions.bump(Entity.USERS);
+            return;
+        }
         String sql = "INSERT INTO friendships (user_id, friend_id) VALUES (?, ?)";
         try {
             jdbcTemplate.update(sql, userId, friendId);
+            friendshipChanged(userId, friendId, true);
+            versions.bump(Entity.USERS);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             // игнорируем
         }
@@ -98,8 +277,16 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public void removeFriend(int userId, int friendId) {
+        if (pendingFriendships != null) {
+            pendingFriendships.remove(new Friendship(userId, friendId));
+            friendshipChanged(userId, friendId, false);
+            versions.bump(Entity.USERS);
+            return;
+        }
         String sql = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
         jdbcTemplate.update(sql, userId, friendId);
+        friendshipChanged(userId, friendId, false);
+        versions.bump(Entity.USERS);
     }
 
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
@@ -117,28 +304,42 @@ public class UserDbStorage implements UserStorage {
     public Set<Integer> getUserFriends(int userId) {
         String sql = "SELECT friend_id FROM friendships WHERE user_id = ?";
         List<Integer> friends = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getInt("friend_id"), userId);
-        return new HashSet<>(friends);
+        Set<Integer> result = new HashSet<>(friends);
+        if (pendingFriendships != null) {
+            pendingFriendships.forEachPending((key, wanted) -> {
+                if (key.userId() == userId) {
+                    overlay(result, key.friendId(), wanted);
+                }
+            });
+        }
+        return result;
     }
 
     @Override
     public List<User> getCommonFriends(int userId1, int userId2) {
-        // Получаем id общих друзей через
-        String sql = "SELECT f1.friend_id " +
-                "FROM friendships f1 " +
-                "INNER JOIN friendships f2 ON f1.friend_id = f2.friend_id " +
-                "WHERE f1.user_id = ? AND f2.user_id = ?";
-        List<Integer> commonFriendIds = jdbcTemplate.query(sql,
-                (rs, rowNum) -> rs.getInt("friend_id"), userId1, userId2);
-
-        if (commonFriendIds.isEmpty()) {
-            return new ArrayList<>();
+        return getCommonFriends(userId1, userId2, UserFields.FULL);
+    }
+
+    @Override
+    public List<User> getCommonFriends(int userId1, int userId2, UserFields fields) {
+        List<Integer> commonFriendIds;
+        if (pendingFriendships != null && !pendingFriendships.isEmpty()) {
+            // есть несброшенная дружба: пересекаем списки друзей с её учётом
+            Set<Integer> common = getUserFriends(userId1);
+            common.retainAll(getUserFriends(userId2));
+            commonFriendIds = new ArrayList<>(common);
+        } else {
+            // Получаем id общих друзей через
+            String sql = "SELECT f1.friend_id " +
+                    "FROM friendships f1 " +
+                    "INNER JOIN friendships f2 ON f1.friend_id = f2.friend_id " +
+                    "WHERE f1.user_id = ? AND f2.user_id = ?";
+            commonFriendIds = jdbcTemplate.query(sql,
+                    (rs, rowNum) -> rs.getInt("friend_id"), userId1, userId2);
         }
 
         // Групповая загрузка юхеров
-        String inSql = String.join(",", Collections.nCopies(commonFriendIds.size(), "?"));
-        String userSql = "SELECT * FROM users WHERE id IN (" + inSql + ")";
-        List<User> users = jdbcTemplate.query(userSql, this::mapRowToUser, commonFriendIds.toArray());
-        return users;
+        return getUsersByIds(commonFriendIds, fields);
     }
 
     private Map<Integer, Set<Integer>> getAllFriends() {
@@ -151,30 +352,130 @@ public class UserDbStorage implements UserStorage {
             allFriends.computeIfAbsent(userId, k -> new HashSet<>()).add(friendId);
             return null;
         });
+        if (pendingFriendships != null) {
+            pendingFriendships.forEachPending((key, wanted) ->
+                    overlay(allFriends.computeIfAbsent(key.userId(), k -> new HashSet<>()), key.friendId(), wanted));
+        }
 
         return allFriends;
     }
 
+    private Map<Integer, Set<Integer>> getFriendsOf(List<Integer> userIds, String inSql) {
+        Map<Integer, Set<Integer>> friends = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friendships WHERE user_id IN (" + inSql + ")", rs -> {
+            friends.computeIfAbsent(rs.getInt("user_id"), k -> new HashSet<>()).add(rs.getInt("friend_id"));
+        }, userIds.toArray());
+        if (pendingFriendships != null) {
+            Set<Integer> requested = new HashSet<>(userIds);
+            pendingFriendships.forEachPending((key, wanted) -> {
+                if (requested.contains(key.userId())) {
+                    overlay(friends.computeIfAbsent(key.userId(), k -> new HashSet<>()), key.friendId(), wanted);
+                }
+            });
+        }
+        return friends;
+    }
+
+    private static void overlay(Set<Integer> friends, int friendId, Boolean wanted) {
+        if (wanted != null) {
+            friends.add(friendId);
+        } else {
+            friends.remove(friendId);
+        }
+    }
+
+    // существующие дружбы пачки ключей одним запросом
+    private Map<Friendship, Boolean> existingFriendships(Collection<Friendship> keys) {
+        String rows = String.join(", ", Collections.nCopies(keys.size(), "(?, ?)"));
+        Object[] args = keys.stream().flatMap(key -> Stream.of(key.userId(), key.friendId())).toArray();
+        Map<Friendship, Boolean> found = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friendships WHERE (user_id, friend_id) IN (" + rows + ")",
+                rs -> {
+                    found.put(new Friendship(rs.getInt("user_id"), rs.getInt("friend_id")), Boolean.TRUE);
+                }, args);
+        return found;
+    }
+
+    private void writeFriendships(List<Change<Friendship, Boolean>> changes) {
+        List<Object[]> merged = new ArrayList<>();
+        List<Object[]> deleted = new ArrayList<>();
+        for (Change<Friendship, Boolean> change : changes) {
+            Object[] row = {change.key().userId(), change.key().friendId()};
+            (change.wanted() != null ? merged : deleted).add(row);
+        }
+        if (!merged.isEmpty()) {
+            jdbcTemplate.batchUpdate("MERGE INTO friendships (user_id, friend_id) KEY (user_id, friend_id) "
+                    + "VALUES (?, ?)", merged);
+        }
+        if (!deleted.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM friendships WHERE user_id = ? AND friend_id = ?", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void flushPendingWrites() {
+        if (pendingFriendships != null) {
+            pendingFriendships.flush();
+        }
+    }
+
     //по задаче удаление
     @Override
     public void deleteUser(int id) {
         try {
+            // у кого пользователь был в друзьях: их списки друзей в кэше устарели
+            Set<Integer> befriendedBy = new HashSet<>();
+            if (pendingFriendships != null) {
+                pendingFriendships.discard(key -> key.userId() == id || key.friendId() == id)
+                        .forEach(key -> befriendedBy.add(key.userId()));
+            }
+
             // Удаляем дружбу (входящие и исходящие)
             String deleteOutgoingFriendshipsSql = "DELETE FROM friendships WHERE user_id = ?";
             jdbcTemplate.update(deleteOutgoingFriendshipsSql, id);
 
-            String deleteIncomingFriendshipsSql = "DELETE FROM friendships WHERE friend_id = ?";
-            jdbcTemplate.update(deleteIncomingFriendshipsSql, id);
+            String deleteIncomingFriendshipsSql = "SELECT user_id FROM OLD TABLE "
+                    + "(DELETE FROM friendships WHERE friend_id = ?)";
+            befriendedBy.addAll(jdbcTemplate.queryForList(deleteIncomingFriendshipsSql, Integer.class, id));
+
+            // фильмы, у которых пропадают лайки пользователя
+            Set<Integer> likedFilmIds = new HashSet<>();
 
-            // Удаляем лайки пользователя
-            String deleteLikesSql = "DELETE FROM film_likes WHERE user_id = ?";
-            jdbcTemplate.update(deleteLikesSql, id);
+            popularity.write(() -> {
+                // несброшенные лайки в рейтинги ещё не попали: снимать из них нечего,
+                // но лайки фильмов в кэше их уже учитывают
+                pendingLikes.discardUser(id).forEach(key -> likedFilmIds.add(key.filmId()));
 
-            // Удаляем пользователя
-            String deleteUserSql = "DELETE FROM users WHERE id = ?";
-            jdbcTemplate.update(deleteUserSql, id);
+                // Удаляем лайки пользователя, запомнив фильмы и время лайков для рейтингов
+                Map<Integer, Instant> likedFilms = new HashMap<>();
+                jdbcTemplate.query("SELECT film_id, created_at FROM OLD TABLE "
+                        + "(DELETE FROM film_likes WHERE user_id = ?)", rs -> {
+                    likedFilms.put(rs.getInt("film_id"), rs.getTimestamp("created_at").toInstant());
+                }, id);
+
+                // Удаляем пользователя
+                String deleteUserSql = "DELETE FROM users WHERE id = ?";
+                jdbcTemplate.update(deleteUserSql, id);
+                likedFilmIds.addAll(likedFilms.keySet());
+                likedFilms.forEach((filmId, likedAt) -> {
+                    popularity.likeRemoved(filmId);
+                    trending.likeRemoved(filmId, likedAt);
+                });
+            });
+
+            knownIds.removed(id);
+            userCache.invalidate(id);
+            befriendedBy.forEach(userId -> friendshipChanged(userId, id, false));
+            filmCache.invalidateAll(likedFilmIds);
+            // вместе с пользователем пропали его лайки, а они входят в ответы по фильмам, и его отзывы
+            versions.bump(Entity.USERS, Entity.FILMS, Entity.REVIEWS);
+        } catch (QueryTimeoutException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Database error while deleting user", e);
         }
     }
-}
\ No newline at end of file
+
+    private record Friendship(int userId, int friendId) {
+    }
+}
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
 
 import java.util.List;
 import java.util.Optional;
@@ -17,6 +18,9 @@ public interface UserStorage {
 
     List<User> getAllUsers();
 
+    // пользователи с друзьями в порядке переданных id; отсутствующие пропускаются
+    List<User> getUsersByIds(List<Integer> ids);
+
     void addFriend(int userId, int friendId);
 
     void removeFriend(int userId, int friendId);
@@ -27,4 +31,21 @@ public interface UserStorage {
 
     void deleteUser(int id); //по задаче удаления
 
+    // друзья только по запросу; хранилище без выборочной загрузки отдаёт их всегда
+    default User getUserById(int id, UserFields fields) {
+        return getUserById(id);
+    }
+
+    default List<User> getAllUsers(UserFields fields) {
+        return getAllUsers();
+    }
+
+    default List<User> getUsersByIds(List<Integer> ids, UserFields fields) {
+        return getUsersByIds(ids);
+    }
+
+    default List<User> getCommonFriends(int userId1, int userId2, UserFields fields) {
+        return getCommonFriends(userId1, userId2);
+    }
+
 }
\ No newline at end of file
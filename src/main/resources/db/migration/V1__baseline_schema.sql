@@ -106,4 +106,4 @@ CREATE TABLE IF NOT EXISTS events
 
 -- Индексы для быстрого поиска событий пользователя
 CREATE INDEX IF NOT EXISTS idx_events_user_id ON events (user_id);
-CREATE INDEX IF NOT EXISTS idx_events_timestamp ON events (timestamp);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_events_timestamp ON events (timestamp);
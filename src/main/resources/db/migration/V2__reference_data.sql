@@ -9,4 +9,4 @@ MERGE INTO genres (id, name) VALUES (2, 'Драма');
 MERGE INTO genres (id, name) VALUES (3, 'Мультфильм');
 MERGE INTO genres (id, name) VALUES (4, 'Триллер');
 MERGE INTO genres (id, name) VALUES (5, 'Документальный');
-MERGE INTO genres (id, name) VALUES (6, 'Боевик');
\ No newline at end of file
+MERGE INTO genres (id, name) VALUES (6, 'Боевик');
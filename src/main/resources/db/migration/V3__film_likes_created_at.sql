@@ -0,0 +1,2 @@
+-- время лайка для трендов (GET /films/trending)
+ALTER TABLE film_likes ADD COLUMN IF NOT EXISTS created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL;
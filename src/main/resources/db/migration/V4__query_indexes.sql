@@ -0,0 +1,16 @@
+-- H2 сам индексирует внешние ключи, поэтому film_likes(user_id), friendships(friend_id),
+-- film_directors(director_id) и reviews(film_id) уже ищутся по индексу. Здесь — только то,
+-- чего такие индексы не дают (планы и замеры — IndexBenchmark).
+
+-- Рейтинг популярности: фильтр по году диапазоном дат и по жанру
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films (release_date);
+CREATE INDEX IF NOT EXISTS idx_film_genres_genre_id ON film_genres (genre_id);
+
+-- Покрывающий индекс: id фильмов режиссёра читаются из индекса, без обращения к строкам таблицы
+CREATE INDEX IF NOT EXISTS idx_film_directors_director_film ON film_directors (director_id, film_id);
+
+-- Не добавляются:
+-- film_likes(user_id, film_id) не ускорил ни общие фильмы, ни рекомендации: индекса внешнего ключа
+-- по user_id хватает, а лишний индекс дорожает на каждом лайке;
+-- reviews(film_id, useful) планировщик H2 не берёт: индекс внешнего ключа по film_id выбирается даже
+-- для фильма с наибольшим числом отзывов, а сортировка его отзывов занимает микросекунды.
@@ -6,23 +6,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
 import ru.yandex.practicum.filmorate.service.DirectorService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.DAO.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.DAO.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.DAO.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.WriteBehind;
 import ru.yandex.practicum.filmorate.storage.event.EventDbStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PendingLikes;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -36,8 +52,18 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
         MpaDbStorage.class,
         DirectorDbStorage.class,
         DirectorService.class,
-        EventDbStorage.class  // Добавили EventDbStorage
+        EventDbStorage.class,  // Добавили EventDbStorage
+        HydrationExecutor.class,
+        CatalogVersions.class,
+        EntityCaches.class,
+        PopularityIndex.class,
+        TrendingIndex.class,
+        LikeAnalytics.class,
+        WriteBehind.class,
+        PendingLikes.class
 })
+// тесты откатывают транзакции, а индекс популярности живёт в памяти, поэтому рейтинг считается запросом
+@TestPropertySource(properties = "filmorate.popularity.enabled=false")
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class FilmorateApplicationTests {
 
@@ -59,6 +85,12 @@ public class FilmorateApplicationTests {
     @Autowired
     private EventDbStorage eventStorage;  // Добавили EventDbStorage
 
+    @Autowired
+    private LikeAnalytics likeAnalytics;
+
+    @Autowired
+    private EntityCaches entityCaches;
+
     // UserDbStorage
     @Test
     public void testUserStorageCreateAndFind() {
@@ -99,6 +131,214 @@ public class FilmorateApplicationTests {
         assertThat(found.get().getName()).isEqualTo("Avatar");
     }
 
+    @Test
+    public void testGetUsersByIdsKeepsOrderAndReportsMissing() {
+        UserService userService = new UserService(userStorage, eventStorage);
+        int first = userStorage.addUser(user("first")).getId();
+        int second = userStorage.addUser(user("second")).getId();
+        userStorage.addFriend(second, first);
+
+        BatchResult<User> result = userService.getUsersByIds(List.of(second, 999_999, first, second), UserFields.FULL);
+        assertThat(result.getItems()).extracting(User::getId).containsExactly(second, first);
+        assertThat(result.getItems().get(0).getFriends()).containsExactly(first);
+        assertThat(result.getMissing()).containsExactly(999_999);
+
+        List<Integer> tooMany = IntStream.rangeClosed(1, UserService.MAX_IDS + 1).boxed().toList();
+        assertThatThrownBy(() -> userService.getUsersByIds(tooMany, UserFields.FULL))
+                .isInstanceOf(ru.yandex.practicum.filmorate.exception.ValidationException.class);
+    }
+
+    @Test
+    public void testRepeatedLikesCountedInAnalyticsOnce() {
+        FilmService filmService = new FilmService(filmStorage, userStorage, mpaStorage, genreStorage,
+                directorService, eventStorage, likeAnalytics);
+        int userId = userStorage.addUser(user("repeater")).getId();
+        int filmId = filmStorage.addFilm(film("Liked again")).getId();
+        long total = likeAnalytics.filmLikes(filmId, LikeAnalytics.Window.DAY).totalLikes();
+
+        filmService.addLike(filmId, userId);
+        filmService.addLike(filmId, userId);
+        filmService.addLike(filmId, userId);
+        assertThat(likeAnalytics.filmLikes(filmId, LikeAnalytics.Window.DAY).totalLikes()).isEqualTo(total + 1);
+
+        // лайк, которого не было, не вычитается
+        int otherFilmId = filmStorage.addFilm(film("Never liked")).getId();
+        filmService.removeLike(otherFilmId, userId);
+        filmService.removeLike(filmId, userId);
+        filmService.removeLike(filmId, userId);
+        assertThat(likeAnalytics.filmLikes(filmId, LikeAnalytics.Window.DAY).totalLikes()).isEqualTo(total);
+    }
+
+    @Test
+    public void testGetFilmsByIdsKeepsOrderAndReportsMissing() {
+        FilmService filmService = new FilmService(filmStorage, userStorage, mpaStorage, genreStorage,
+                directorService, eventStorage, likeAnalytics);
+        int first = filmStorage.addFilm(film("First")).getId();
+        int second = filmStorage.addFilm(film("Second")).getId();
+
+        BatchResult<Film> result = filmService.getFilmsByIds(List.of(second, 999_999, first), FilmFields.FULL);
+        assertThat(result.getItems()).extracting(Film::getId).containsExactly(second, first);
+        assertThat(result.getMissing()).containsExactly(999_999);
+    }
+
+    @Test
+    public void testProjectionSkipsUnrequestedRelations() {
+        int userId = userStorage.addUser(user("viewer")).getId();
+        int friendId = userStorage.addUser(user("friend")).getId();
+        userStorage.addFriend(userId, friendId);
+        int filmId = filmStorage.addFilm(film("Projected")).getId();
+        filmStorage.addLike(filmId, userId);
+
+        Film summary = filmStorage.getFilmsByIds(List.of(filmId), FilmFields.of("summary", null)).get(0);
+        assertThat(summary.getGenres()).isEmpty();
+        assertThat(summary.getLikes()).isNull();
+        assertThat(summary.getDirectors()).isNull();
+
+        Film likesOnly = filmStorage.getFilmById(filmId, FilmFields.of(null, List.of("id", "likes")));
+        assertThat(likesOnly.getGenres()).isNull();
+        assertThat(likesOnly.getLikes()).containsExactly(userId);
+
+        assertThat(userStorage.getUserById(userId, UserFields.of("summary", null)).getFriends()).isNull();
+        assertThat(userStorage.getUsersByIds(List.of(userId), UserFields.of(null, List.of("friends"))).get(0)
+                .getFriends()).containsExactly(friendId);
+
+        assertThatThrownBy(() -> FilmFields.of(null, List.of("rating")))
+                .isInstanceOf(ru.yandex.practicum.filmorate.exception.ValidationException.class);
+        assertThatThrownBy(() -> UserFields.of("compact", null))
+                .isInstanceOf(ru.yandex.practicum.filmorate.exception.ValidationException.class);
+    }
+
+    @Test
+    public void testEntityCacheFollowsWrites() {
+        int userId = userStorage.addUser(user("cached")).getId();
+        int friendId = userStorage.addUser(user("cachedFriend")).getId();
+        Director director = new Director();
+        director.setName("Old name");
+        director = directorService.create(director);
+        Film film = film("Cached");
+        film.getDirectors().add(director);
+        int filmId = filmStorage.addFilm(film).getId();
+
+        long hits = entityCaches.films().stats().hits();
+        assertThat(filmStorage.getFilmById(filmId).getLikes()).isEmpty();
+        assertThat(entityCaches.films().stats().hits()).isEqualTo(hits + 1);
+
+        filmStorage.addLike(filmId, userId);
+        assertThat(filmStorage.getFilmById(filmId).getLikes()).containsExactly(userId);
+        filmStorage.removeLike(filmId, userId);
+        assertThat(filmStorage.getFilmById(filmId).getLikes()).isEmpty();
+
+        director.setName("New name");
+        directorService.update(director);
+        assertThat(filmStorage.getFilmById(filmId).getDirectors()).extracting(Director::getName)
+                .containsExactly("New name");
+
+        film.setName("Renamed");
+        filmStorage.updateFilm(film);
+        assertThat(filmStorage.getFilmById(filmId, FilmFields.NONE).getName()).isEqualTo("Renamed");
+
+        assertThat(userStorage.getUserById(userId).getFriends()).isEmpty();
+        userStorage.addFriend(userId, friendId);
+        assertThat(userStorage.getUserById(userId).getFriends()).containsExactly(friendId);
+        userStorage.deleteUser(friendId);
+        assertThat(userStorage.getUserById(userId).getFriends()).isEmpty();
+        assertThat(userStorage.getUserById(friendId)).isNull();
+
+        // ответ из кэша - копия, её изменения в кэш не попадают
+        filmStorage.getFilmById(filmId).setName("Changed by caller");
+        assertThat(filmStorage.getFilmById(filmId).getName()).isEqualTo("Renamed");
+    }
+
+    @Test
+    public void testCacheHitCanBeChangedWithoutTouchingCache() {
+        int userId = userStorage.addUser(user("copyViewer")).getId();
+        int friendId = userStorage.addUser(user("copyFriend")).getId();
+        userStorage.addFriend(userId, friendId);
+        Director director = new Director();
+        director.setName("Director");
+        director = directorService.create(director);
+        Film film = film("Copied");
+        Genre genre = new Genre();
+        genre.setId(1);
+        film.setGenres(new ArrayList<>(List.of(genre)));
+        film.getDirectors().add(director);
+        int filmId = filmStorage.addFilm(film).getId();
+        filmStorage.addLike(filmId, userId);
+        Film expected = filmStorage.getFilmById(filmId);
+        User expectedUser = userStorage.getUserById(userId);
+
+        // попадание в кэш: меняем всё, что отдано вызывающему, вплоть до вложенных объектов
+        long hits = entityCaches.films().stats().hits();
+        Film hit = filmStorage.getFilmById(filmId);
+        assertThat(entityCaches.films().stats().hits()).isEqualTo(hits + 1);
+        hit.getMpa().setName("Changed");
+        hit.getGenres().get(0).setName("Changed");
+        hit.getGenres().add(new Genre());
+        hit.getLikes().add(friendId);
+        hit.getDirectors().iterator().next().setName("Changed");
+        hit.getDirectors().clear();
+        User userHit = userStorage.getUserById(userId);
+        userHit.getFriends().add(userId);
+
+        assertThat(filmStorage.getFilmById(filmId)).isEqualTo(expected);
+        assertThat(userStorage.getUserById(userId)).isEqualTo(expectedUser);
+    }
+
+    @Test
+    public void testUnknownIdsAnsweredWithoutQuery() {
+        int removedId = filmStorage.addFilm(film("Removed")).getId();
+        int filmId = filmStorage.addFilm(film("Known")).getId();
+        filmStorage.deleteFilm(removedId);
+        int userId = userStorage.addUser(user("known")).getId();
+
+        long rejected = entityCaches.filmIds().stats().rejected();
+        assertThat(filmStorage.getFilmById(removedId)).isNull();
+        assertThat(filmStorage.getFilmById(-1)).isNull();
+        assertThat(filmStorage.getFilmsByIds(List.of(filmId, removedId), FilmFields.NONE))
+                .extracting(Film::getId).containsExactly(filmId);
+        assertThat(entityCaches.filmIds().stats().rejected()).isEqualTo(rejected + 3);
+
+        // id больше наибольшего известного не отсекается: строка могла появиться в обход хранилища
+        long passed = entityCaches.filmIds().stats().passed();
+        assertThat(filmStorage.getFilmById(filmId + 1_000)).isNull();
+        assertThat(entityCaches.filmIds().stats().passed()).isEqualTo(passed + 1);
+
+        // новый id виден сразу, удалённый снова отсекается
+        int nextFilmId = filmStorage.addFilm(film("Next")).getId();
+        assertThat(filmStorage.getFilmById(nextFilmId)).isNotNull();
+        filmStorage.deleteFilm(nextFilmId);
+        assertThat(filmStorage.getFilmById(nextFilmId)).isNull();
+
+        long rejectedUsers = entityCaches.userIds().stats().rejected();
+        assertThat(userStorage.getUserById(0)).isNull();
+        assertThat(userStorage.findUserById(-1)).isEmpty();
+        assertThat(userStorage.getUserById(userId)).isNotNull();
+        userStorage.deleteUser(userId);
+        assertThat(userStorage.findUserById(userId)).isEmpty();
+        assertThat(entityCaches.userIds().stats().rejected()).isEqualTo(rejectedUsers + 3);
+    }
+
+    private static User user(String login) {
+        User user = new User();
+        user.setEmail(login + "@mail.ru");
+        user.setLogin(login);
+        user.setName(login);
+        user.setBirthday(LocalDate.of(1990, 1, 1));
+        return user;
+    }
+
+    private static Film film(String name) {
+        Film film = new Film();
+        film.setName(name);
+        film.setDescription("description");
+        film.setReleaseDate(LocalDate.of(2000, 1, 1));
+        film.setDuration(100);
+        Mpa mpa = new Mpa();
+        mpa.setId(1);
+        film.setMpa(mpa);
+        return film;
+    }
+
     //  GenreDbStorage тест
     @Test
     public void testGetAllGenres() {
@@ -121,7 +361,8 @@ public class FilmorateApplicationTests {
                 mpaStorage,
                 genreStorage,
                 directorService,
-                eventStorage  // Добавили eventStorage
+                eventStorage,  // Добавили eventStorage
+                likeAnalytics
         );
 
         Film validFilm = new Film();
@@ -147,7 +388,8 @@ public class FilmorateApplicationTests {
                 mpaStorage,
                 genreStorage,
                 directorService,
-                eventStorage  // Добавили eventStorage
+                eventStorage,  // Добавили eventStorage
+                likeAnalytics
         );
 
         Film invalidFilm = new Film();
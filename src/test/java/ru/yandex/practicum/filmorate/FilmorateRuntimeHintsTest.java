@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmorateRuntimeHintsTest {
+    private final RuntimeHints hints = new RuntimeHints();
+
+    FilmorateRuntimeHintsTest() {
+        new FilmorateRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void modelsAreBindable() throws Exception {
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Film.class.getMethod("getGenres")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(User.class.getMethod("setBirthday",
+                LocalDate.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(LikeAnalytics.TopFilms.class).test(hints));
+    }
+
+    @Test
+    void migrationsAndLogbookServicesAreIncluded() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("db/migration/V1__baseline_schema.sql").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource()
+                .forResource("META-INF/services/org.zalando.logbook.LogbookFactory").test(hints));
+        for (String service : FilmorateRuntimeHints.LOGBOOK_SERVICES) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(TypeReference.of(service))
+                    .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS).test(hints), service);
+        }
+    }
+}
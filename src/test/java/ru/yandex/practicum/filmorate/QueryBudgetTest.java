@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import ru.yandex.practicum.filmorate.analytics.LikeAnalytics;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.cache.EntityCaches;
+import ru.yandex.practicum.filmorate.limit.QueryDeadlineConfiguration;
+import ru.yandex.practicum.filmorate.logging.QueryBudget;
+import ru.yandex.practicum.filmorate.logging.SqlTracing;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.DAO.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.DAO.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.DAO.MpaDbStorage;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+import ru.yandex.practicum.filmorate.storage.WriteBehind;
+import ru.yandex.practicum.filmorate.storage.event.EventDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PendingLikes;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Бюджеты SQL горячих путей на одних и тех же засеянных данных. Кэши и индекс популярности
+// выключены, чтобы каждый вызов доходил до БД: иначе повторный запрос на строку спрятался бы за кэшем.
+// Если тест упал после изменения - в сообщении шаблоны операторов и сколько раз каждый выполнился.
+@JdbcTest
+@AutoConfigureTestDatabase
+@Import({
+        UserDbStorage.class,
+        FilmDbStorage.class,
+        GenreDbStorage.class,
+        MpaDbStorage.class,
+        DirectorDbStorage.class,
+        DirectorService.class,
+        EventDbStorage.class,
+        HydrationExecutor.class,
+        CatalogVersions.class,
+        EntityCaches.class,
+        PopularityIndex.class,
+        TrendingIndex.class,
+        LikeAnalytics.class,
+        WriteBehind.class,
+        PendingLikes.class,
+        SqlTracing.class,
+        QueryDeadlineConfiguration.class
+})
+@TestPropertySource(properties = {
+        "filmorate.popularity.enabled=false",
+        "filmorate.entity-cache.enabled=false",
+        "filmorate.known-ids.enabled=false",
+        "filmorate.sql-trace.count-rows=true"
+})
+public class QueryBudgetTest {
+    private static final int USERS = 30;
+    private static final int FILMS = 40;
+    private static final int DIRECTORS = 4;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private GenreDbStorage genreStorage;
+
+    @Autowired
+    private MpaDbStorage mpaStorage;
+
+    @Autowired
+    private DirectorService directorService;
+
+    @Autowired
+    private EventDbStorage eventStorage;
+
+    @Autowired
+    private LikeAnalytics likeAnalytics;
+
+    private FilmService filmService;
+    private UserService userService;
+    private final List<Integer> users = new ArrayList<>();
+    private final List<Integer> films = new ArrayList<>();
+    private final List<Integer> directors = new ArrayList<>();
+
+    // у каждого пользователя 5 друзей и 8 лайков, у каждого фильма 1-2 жанра и режиссёр
+    @BeforeEach
+    void seed() {
+        filmService = new FilmService(filmStorage, userStorage, mpaStorage, genreStorage, directorService,
+                eventStorage, likeAnalytics);
+        userService = new UserService(userStorage, eventStorage);
+        Random random = new Random(42);
+        for (int i = 0; i < DIRECTORS; i++) {
+            Director director = new Director();
+            director.setName("Director " + i);
+            directors.add(directorService.create(director).getId());
+        }
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail("budget" + i + "@mail.ru");
+            user.setLogin("budget" + i);
+            user.setName("Budget " + i);
+            user.setBirthday(LocalDate.of(1980 + i % 20, 1, 1));
+            users.add(userStorage.addUser(user).getId());
+        }
+        for (int i = 0; i < FILMS; i++) {
+            films.add(filmStorage.addFilm(film(i, random)).getId());
+        }
+        for (int i = 0; i < USERS; i++) {
+            for (int k = 1; k <= 5; k++) {
+                userStorage.addFriend(users.get(i), users.get((i + k * 3) % USERS));
+            }
+            for (int k = 0; k < 8; k++) {
+                filmStorage.addLike(films.get((i * 7 + k * 3) % FILMS), users.get(i));
+            }
+        }
+    }
+
+    @Test
+    void filmReads() {
+        Film film = QueryBudget.of("film", 4, 11)
+                .check(() -> filmService.getFilm(films.get(3), FilmFields.FULL));
+        assertThat(film.getLikes()).isNotEmpty();
+        assertThat(QueryBudget.of("films by ids", 4, 201)
+                .check(() -> filmService.getFilmsByIds(films.subList(0, 20), FilmFields.FULL)).getItems())
+                .hasSize(20);
+        assertThat(QueryBudget.of("popular by genre", 5, 102)
+                .check(() -> filmService.getPopularFilms(10, 1, null))).isNotEmpty();
+        assertThat(QueryBudget.of("director films", 5, 97)
+                .check(() -> filmService.getFilmsByDirectorSorted(directors.get(0), "likes", FilmFields.FULL)))
+                .isNotEmpty();
+        assertThat(QueryBudget.of("search", 4, 109)
+                .check(() -> filmService.getFilmsByFilter("film 1", List.of("title", "director")))).isNotEmpty();
+    }
+
+    @Test
+    void personalizedReads() {
+        assertThat(QueryBudget.of("common films", 4, 11)
+                .check(() -> filmService.getCommonFilms(users.get(0), users.get(3), FilmFields.FULL))).isNotEmpty();
+        assertThat(QueryBudget.of("recommendations", 7, 22)
+                .check(() -> filmService.getRecommendedFilms(users.get(0), FilmFields.FULL))).isNotEmpty();
+        assertThat(QueryBudget.of("friends", 4, 36)
+                .check(() -> userService.getFriends(users.get(0), UserFields.FULL))).hasSize(5);
+        assertThat(QueryBudget.of("common friends", 5, 30)
+                .check(() -> userService.getCommonFriends(users.get(0), users.get(3), UserFields.FULL)))
+                .isNotEmpty();
+    }
+
+    @Test
+    void writesAndFeed() {
+        QueryBudget.of("like", 4, 2).check(() -> filmService.addLike(films.get(0), users.get(1)));
+        QueryBudget.of("friend", 4, 2).check(() -> userService.addFriend(users.get(0), users.get(1)));
+        assertThat(QueryBudget.of("feed", 2, 2).check(() -> userService.getUserFeed(users.get(0)))).isNotEmpty();
+    }
+
+    // обход по одному фильму стоит столько же операторов на каждый фильм, сколько пачка на все
+    @Test
+    void perRowLoadingExceedsBatchBudget() {
+        QueryBudget batch = QueryBudget.of("films by ids", 4, 201);
+        assertThatThrownBy(() -> batch.check(() -> films.subList(0, 20).stream()
+                .map(id -> filmStorage.getFilmById(id, FilmFields.FULL))
+                .toList()))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("films by ids");
+    }
+
+    private Film film(int i, Random random) {
+        Film film = new Film();
+        film.setName("Film " + i);
+        film.setDescription("description " + i);
+        film.setReleaseDate(LocalDate.of(1990 + i % 30, 1 + i % 12, 1));
+        film.setDuration(90 + i);
+        Mpa mpa = new Mpa();
+        mpa.setId(1 + i % 5);
+        film.setMpa(mpa);
+        List<Genre> genres = new ArrayList<>();
+        for (int id : new int[]{1 + i % 6, 1 + random.nextInt(6)}) {
+            if (genres.stream().noneMatch(genre -> genre.getId() == id)) {
+                Genre genre = new Genre();
+                genre.setId(id);
+                genres.add(genre);
+            }
+        }
+        film.setGenres(genres);
+        Director director = new Director();
+        director.setId(directors.get(i % DIRECTORS));
+        film.getDirectors().add(director);
+        return film;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Оценки скетчей должны укладываться в заявленные в ответах границы ошибки
+class LikeAnalyticsTest {
+    private static final int FILMS = 5000;
+    private static final int USERS = 20000;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final LikeAnalytics analytics = new LikeAnalytics(2048, 4, 100, 12, clock);
+    private final Random random = new Random(11);
+
+    @Test
+    void estimatesStayWithinReportedBounds() {
+        Map<Integer, Integer> likes = new HashMap<>();
+        Set<Integer> likers = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            // десять «хитов» собирают половину лайков, остальное размазано по каталогу
+            int filmId = random.nextBoolean() ? 1 + random.nextInt(10) : 1 + random.nextInt(FILMS);
+            int userId = 1 + random.nextInt(USERS);
+            analytics.likeAdded(filmId, userId);
+            likes.merge(filmId, 1, Integer::sum);
+            likers.add(userId);
+        }
+
+        int outOfBounds = 0;
+        for (int filmId = 1; filmId <= FILMS; filmId++) {
+            LikeAnalytics.FilmLikes estimate = analytics.filmLikes(filmId, LikeAnalytics.Window.HOUR);
+            int actual = likes.getOrDefault(filmId, 0);
+            assertTrue(estimate.estimate() >= actual, "film " + filmId);
+            if (estimate.estimate() - actual > estimate.maxError()) {
+                outOfBounds++;
+            }
+        }
+        assertTrue(outOfBounds <= FILMS * 0.02, "out of bounds: " + outOfBounds);
+
+        LikeAnalytics.TopFilms top = analytics.topFilms(LikeAnalytics.Window.DAY, 10);
+        assertEquals(100_000, top.totalLikes());
+        for (LikeAnalytics.TopFilm film : top.films()) {
+            int actual = likes.get(film.filmId());
+            assertTrue(film.filmId() <= 10, "film " + film.filmId());
+            assertTrue(film.guaranteedCount() <= actual && actual <= film.count());
+            assertTrue(film.count() - actual <= top.maxError());
+        }
+
+        LikeAnalytics.ActiveUsers users = analytics.activeUsers(LikeAnalytics.Window.HOUR);
+        double error = Math.abs(users.distinctLikers() - likers.size()) / (double) likers.size();
+        assertTrue(error <= 3 * users.relativeStandardError(), "error " + error);
+    }
+
+    @Test
+    void oldIntervalsLeaveTheWindow() {
+        analytics.likeAdded(1, 1);
+        analytics.likeAdded(1, 2);
+        analytics.eventRecorded(1);
+        clock.advance(Duration.ofMinutes(30));
+        analytics.likeAdded(1, 3);
+        analytics.likeRemoved(1, 2);
+
+        assertEquals(2, analytics.filmLikes(1, LikeAnalytics.Window.HOUR).estimate());
+
+        // лайки первого интервала выпали из часового окна, снятие лайка учтено в интервале снятия
+        clock.advance(Duration.ofMinutes(45));
+        assertEquals(0, analytics.filmLikes(1, LikeAnalytics.Window.HOUR).estimate());
+        assertEquals(0, analytics.activeUsers(LikeAnalytics.Window.HOUR).distinctActiveUsers());
+        assertEquals(2, analytics.filmLikes(1, LikeAnalytics.Window.DAY).estimate());
+        assertEquals(List.of(1), analytics.topFilms(LikeAnalytics.Window.DAY, 5).films().stream()
+                .map(LikeAnalytics.TopFilm::filmId).toList());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
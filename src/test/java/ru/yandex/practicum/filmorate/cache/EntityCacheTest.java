@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityCacheTest {
+    // значение - список, его вес - длина; covers - список не короче
+    private final EntityCache<Integer, List<Integer>> cache = new EntityCache<>("test", 100, List::size,
+            (a, b) -> a.size() >= b.size());
+
+    @Test
+    void frequentKeysSurviveScan() {
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 50; key++) {
+                load(key);
+            }
+        }
+        // разовый проход по множеству других ключей не вытесняет часто читаемые
+        for (int key = 1000; key < 3000; key++) {
+            load(key);
+        }
+        long hot = IntStream.range(0, 50).filter(key -> get(key) != null).count();
+        assertTrue(hot >= 45, "hot keys kept: " + hot);
+
+        EntityCache.Stats stats = cache.stats();
+        assertTrue(stats.weight() <= 100);
+        assertTrue(stats.evictions() > 0);
+    }
+
+    @Test
+    void staleLoadIsNotCached() {
+        long stamp = cache.stamp(1);
+        // запись изменилась, пока шла загрузка
+        cache.invalidate(1);
+        cache.put(1, List.of(1), stamp);
+        assertNull(get(1));
+
+        cache.put(1, List.of(2), cache.stamp(1));
+        assertEquals(List.of(2), get(1));
+    }
+
+    @Test
+    void updateAndInvalidateIfChangeEntries() {
+        cache.put(1, List.of(1), cache.stamp(1));
+        cache.put(2, List.of(2), cache.stamp(2));
+
+        cache.update(1, value -> List.of(1, 10));
+        assertEquals(List.of(1, 10), get(1));
+        // неполное значение не заменяет более полное
+        cache.put(1, List.of(7), cache.stamp(1));
+        assertEquals(List.of(1, 10), get(1));
+
+        cache.invalidateIf(value -> value.contains(2));
+        assertNull(get(2));
+        assertEquals(1, cache.stats().invalidations());
+        // тяжелее всего кэша - не кладётся
+        cache.put(3, Collections.nCopies(101, 3), cache.stamp(3));
+        assertNull(get(3));
+    }
+
+    private void load(int key) {
+        if (get(key) == null) {
+            cache.put(key, List.of(key), cache.stamp(key));
+        }
+    }
+
+    private List<Integer> get(int key) {
+        return cache.getIfPresent(key, value -> true);
+    }
+}
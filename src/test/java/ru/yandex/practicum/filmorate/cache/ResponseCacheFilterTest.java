@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheFilterTest {
+
+    private CatalogVersions versions;
+    private ResponseCacheFilter filter;
+    private AtomicInteger controllerCalls;
+    private String body;
+    private int status = HttpServletResponse.SC_OK;
+
+    @BeforeEach
+    void setUp() {
+        versions = new CatalogVersions();
+        filter = new ResponseCacheFilter(versions, true, 1024 * 1024, 64);
+        controllerCalls = new AtomicInteger();
+    }
+
+    @Test
+    void repeatedGetIsServedFromCache() throws Exception {
+        MockHttpServletResponse first = get("/genres", null);
+        MockHttpServletResponse second = get("/genres", null);
+
+        assertEquals(1, controllerCalls.get());
+        assertEquals(first.getContentAsString(), second.getContentAsString());
+        assertEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+    }
+
+    @Test
+    void matchingIfNoneMatchReturnsNotModified() throws Exception {
+        String etag = get("/films/1", null).getHeader("ETag");
+
+        MockHttpServletResponse response = get("/films/1", etag);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(0, response.getContentLength());
+        assertEquals(1, controllerCalls.get());
+    }
+
+    @Test
+    void bumpInvalidatesEtagAndCachedBody() throws Exception {
+        String etag = get("/films", null).getHeader("ETag");
+
+        versions.bump(CatalogVersions.Entity.FILMS);
+        MockHttpServletResponse response = get("/films", etag);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertNotEquals(etag, response.getHeader("ETag"));
+        assertEquals(2, controllerCalls.get());
+    }
+
+    @Test
+    void otherEndpointsAreNotCached() throws Exception {
+        get("/films/popular", null);
+        MockHttpServletResponse response = get("/films/popular", null);
+
+        assertNull(response.getHeader("ETag"));
+        assertEquals(2, controllerCalls.get());
+    }
+
+    // тело больше max-entry-bytes уходит клиенту как есть, в кэш не кладётся, но ETag получает
+    @Test
+    void largeBodyStreamsThroughWithoutCaching() throws Exception {
+        body = "[" + "{\"id\":1},".repeat(20) + "{\"id\":2}]";
+        MockHttpServletResponse first = get("/films", null);
+        MockHttpServletResponse second = get("/films", null);
+
+        assertEquals(body, second.getContentAsString());
+        assertEquals(2, controllerCalls.get());
+        assertNotNull(first.getHeader("ETag"));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/films", first.getHeader("ETag")).getStatus());
+    }
+
+    @Test
+    void errorResponseGetsNoEtagAndIsNotCached() throws Exception {
+        status = HttpServletResponse.SC_NOT_FOUND;
+        MockHttpServletResponse response = get("/films/99", null);
+        get("/films/99", null);
+
+        assertNull(response.getHeader("ETag"));
+        assertEquals(2, controllerCalls.get());
+    }
+
+    private MockHttpServletResponse get(String uri, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                    throws IOException {
+                int call = controllerCalls.incrementAndGet();
+                resp.setStatus(status);
+                resp.setContentType("application/json");
+                resp.getWriter().write(body != null ? body : "[{\"call\":" + call + "}]");
+            }
+        });
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.cache;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions.Entity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private final CatalogVersions versions = new CatalogVersions();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight singleFlight = new SingleFlight(versions, true, Duration.ZERO);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Integer> leader = executor.submit(() -> singleFlight.run("popular", List.of(10), () -> {
+                started.countDown();
+                await(release);
+                return loads.incrementAndGet();
+            }, Entity.FILMS));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<Future<Integer>> followers = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                followers.add(executor.submit(() -> singleFlight.run("popular", List.of(10),
+                        loads::incrementAndGet, Entity.FILMS)));
+            }
+            while (singleFlight.stats().shared() < 7) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+            for (Future<Integer> follower : followers) {
+                assertEquals(1, follower.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            // без ttl результат в памяти не остаётся
+            assertEquals(0, singleFlight.stats().entries());
+            assertEquals(2, singleFlight.run("popular", List.of(10), loads::incrementAndGet, Entity.FILMS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void ttlKeepsResultUntilVersionChanges() {
+        SingleFlight singleFlight = new SingleFlight(versions, true, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, singleFlight.run("common", List.of(1, 2), loads::incrementAndGet, Entity.USERS));
+        assertEquals(1, singleFlight.run("common", List.of(1, 2), loads::incrementAndGet, Entity.USERS));
+        assertEquals(2, singleFlight.run("common", List.of(1, 3), loads::incrementAndGet, Entity.USERS));
+
+        // запись в другую сущность ответ не трогает
+        versions.bump(Entity.FILMS);
+        assertEquals(1, singleFlight.run("common", List.of(1, 2), loads::incrementAndGet, Entity.USERS));
+        versions.bump(Entity.USERS);
+        assertEquals(3, singleFlight.run("common", List.of(1, 2), loads::incrementAndGet, Entity.USERS));
+    }
+
+    @Test
+    void failureReachesCallerAndIsNotKept() {
+        SingleFlight singleFlight = new SingleFlight(versions, true, Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.run("reviews", List.of(1), () -> {
+            throw new IllegalStateException("db down");
+        }, Entity.REVIEWS));
+        assertEquals("ok", singleFlight.run("reviews", List.of(1), () -> "ok", Entity.REVIEWS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.limit.QueryDeadlines;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Истёкший срок запроса отвечает 503 на любом пути хранилища. Кэши и индекс популярности выключены,
+// чтобы запросы доходили до БД
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:deadline-controller;DB_CLOSE_DELAY=-1",
+        "filmorate.popularity.enabled=false",
+        "filmorate.entity-cache.enabled=false",
+        "filmorate.response-cache.enabled=false"
+})
+@AutoConfigureMockMvc
+class FilmControllerDeadlineTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void expiredDeadlineAnswersServiceUnavailable() throws Exception {
+        mockMvc.perform(post("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Film\",\"description\":\"d\",\"releaseDate\":\"2000-01-01\","
+                                + "\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/films/popular").header(QueryDeadlines.TIMEOUT_HEADER, "0"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.error").exists());
+        mockMvc.perform(get("/films/search").param("query", "F").param("by", "title")
+                        .header(QueryDeadlines.TIMEOUT_HEADER, "0"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.error").exists());
+
+        mockMvc.perform(get("/films/popular"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Film"));
+    }
+}
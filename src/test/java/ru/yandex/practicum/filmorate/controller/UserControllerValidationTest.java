@@ -46,7 +46,8 @@ class UserControllerValidationTest {
                 null,
                 null,
                 null,
-                dummyEventStorage
+                dummyEventStorage,
+                null
         );
 
         controller = new UserController(userService, filmService);
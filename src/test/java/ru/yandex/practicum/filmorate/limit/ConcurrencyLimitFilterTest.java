@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTest {
+
+    @Test
+    void limitShrinksWhenLatencyGrowsAndRecovers() {
+        AdaptiveLimit limit = new AdaptiveLimit("test", 1, 50);
+        // без очереди: 10 мс при полной загрузке, лимит растёт к потолку
+        run(limit, 500, 10);
+        assertEquals(50, limit.getLimit());
+
+        // задержка выросла в 10 раз - лимит падает
+        run(limit, 10, 100);
+        int shrunk = limit.getLimit();
+        assertTrue(shrunk < 25, "limit after latency spike: " + shrunk);
+
+        // задержка вернулась - лимит снова растёт
+        run(limit, 1000, 10);
+        assertTrue(limit.getLimit() > shrunk);
+    }
+
+    @Test
+    void failuresBackOffMultiplicatively() {
+        AdaptiveLimit limit = new AdaptiveLimit("test", 1, 20);
+        assertEquals(10, limit.getLimit());
+        assertTrue(limit.tryAcquire());
+        limit.onFailure();
+        assertEquals(9, limit.getLimit());
+        assertEquals(1, limit.stats().failed());
+    }
+
+    @Test
+    void overLimitRequestGetsServiceUnavailable() throws Exception {
+        ConcurrencyLimits limits = new ConcurrencyLimits(true, 2, 100, Duration.ofMillis(1500));
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limits);
+        AdaptiveLimit search = limits.get(EndpointClass.SEARCH);
+        // все места заняты запросами, которые ещё выполняются
+        assertEquals(2, search.getLimit());
+        assertTrue(search.tryAcquire());
+        assertTrue(search.tryAcquire());
+
+        MockHttpServletResponse rejected = get(filter, "/films/search", "query=a");
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals("2", rejected.getHeader("Retry-After"));
+        assertTrue(rejected.getContentAsString().contains("error"));
+        assertEquals(1, search.stats().rejected());
+
+        // свой лимит у каждого класса: соседний дешёвый запрос проходит
+        assertEquals(HttpServletResponse.SC_OK, get(filter, "/genres", null).getStatus());
+        assertEquals(HttpServletResponse.SC_OK, get(filter, "/admin/limits", null).getStatus());
+        assertEquals(1, limits.get(EndpointClass.READ).stats().accepted());
+    }
+
+    @Test
+    void concurrentSearchesPassWithDefaultConfiguration() throws Exception {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        new ApplicationContextRunner()
+                .withInitializer(context -> {
+                    context.getEnvironment().getPropertySources()
+                            .addFirst(new PropertiesPropertySource("application", properties));
+                    // как в приложении: строки вида 1s в Duration
+                    context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+                })
+                .withBean(ConcurrencyLimits.class)
+                .run(context -> {
+                    ConcurrencyLimits limits = context.getBean(ConcurrencyLimits.class);
+                    // пул 10 без запаса 2 на четыре дорогих класса
+                    assertEquals(2, limits.get(EndpointClass.SEARCH).stats().maxLimit());
+                    assertEquals(2, limits.get(EndpointClass.SEARCH).getLimit());
+
+                    ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limits);
+                    CountDownLatch inside = new CountDownLatch(2);
+                    CountDownLatch release = new CountDownLatch(1);
+                    ExecutorService clients = Executors.newFixedThreadPool(2);
+                    try {
+                        List<Future<Integer>> statuses = new ArrayList<>();
+                        for (int i = 0; i < 2; i++) {
+                            statuses.add(clients.submit(() -> {
+                                MockHttpServletResponse response = new MockHttpServletResponse();
+                                filter.doFilter(request("GET", "/films/search", "query=a"), response,
+                                        (req, res) -> {
+                                            inside.countDown();
+                                            await(release);
+                                        });
+                                return response.getStatus();
+                            }));
+                        }
+                        // оба поиска выполняются одновременно
+                        assertTrue(inside.await(5, TimeUnit.SECONDS));
+                        release.countDown();
+                        for (Future<Integer> status : statuses) {
+                            assertEquals(HttpServletResponse.SC_OK, status.get(5, TimeUnit.SECONDS));
+                        }
+                    } finally {
+                        release.countDown();
+                        clients.shutdownNow();
+                    }
+                });
+    }
+
+    @Test
+    void expensiveCeilingSplitsPoolWithoutHeadroom() {
+        assertEquals(2, ConcurrencyLimits.expensiveCeiling(10, 2));
+        assertEquals(7, ConcurrencyLimits.expensiveCeiling(30, 2));
+        assertEquals(1, ConcurrencyLimits.expensiveCeiling(3, 2));
+    }
+
+    @Test
+    void requestsAreClassified() {
+        assertEquals(EndpointClass.POPULAR_FILTERED, classify("GET", "/films/popular", "year=2000"));
+        assertEquals(EndpointClass.READ, classify("GET", "/films/popular", "count=10"));
+        assertEquals(EndpointClass.RECOMMENDATIONS, classify("GET", "/users/7/recommendations", null));
+        assertEquals(EndpointClass.COMMON_FILMS, classify("GET", "/films/common", "userId=1&friendId=2"));
+        assertEquals(EndpointClass.WRITE, classify("PUT", "/films/1/like/2", null));
+        assertNull(classify("GET", "/admin/caches", null));
+        assertEquals(EndpointClass.SEARCH, classify("GET", "/%66ilms/search", "query=a&by=title"));
+        assertEquals(EndpointClass.RECOMMENDATIONS, classify("GET", "/users/7;v=1/recommendations", null));
+        assertNull(classify("PUT", "/%61dmin/caches", null));
+    }
+
+    // задержка постоянная, в работе всегда ровно limit запросов
+    private static void run(AdaptiveLimit limit, int rounds, long millis) {
+        for (int round = 0; round < rounds; round++) {
+            int slots = limit.getLimit();
+            for (int i = 0; i < slots; i++) {
+                assertTrue(limit.tryAcquire());
+            }
+            for (int i = 0; i < slots; i++) {
+                limit.onSuccess(TimeUnit.MILLISECONDS.toNanos(millis));
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MockHttpServletResponse get(ConcurrencyLimitFilter filter, String uri, String query)
+            throws Exception {
+        MockHttpServletRequest request = request("GET", uri, query);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static EndpointClass classify(String method, String uri, String query) {
+        return EndpointClass.of(request(method, uri, query));
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String query) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        if (query != null) {
+            request.setQueryString(query);
+            for (String pair : query.split("&")) {
+                String[] parts = pair.split("=", 2);
+                request.addParameter(parts[0], parts[1]);
+            }
+        }
+        return request;
+    }
+}
@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.limit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryDeadlineTest {
+    // десятки миллиардов строк: без отмены не завершится за время теста
+    private static final String ENDLESS = "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 200000) a, SYSTEM_RANGE(1, 200000) b";
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbc;
+    private QueryDeadlines deadlines;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("deadline-" + UUID.randomUUID())
+                .build();
+        jdbc = new JdbcTemplate(new DeadlineDataSource(dataSource));
+        deadlines = new QueryDeadlines(true, Duration.ofSeconds(10), Duration.ofMillis(300));
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryDeadline.set(null);
+        deadlines.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void runningStatementIsCancelledAtDeadline() {
+        QueryDeadline deadline = deadlines.open(EndpointClass.READ, null);
+        QueryDeadline.set(deadline);
+        long start = System.nanoTime();
+
+        assertThrows(QueryTimeoutException.class, () -> jdbc.queryForObject(ENDLESS, Long.class));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        // следующий оператор того же запроса в БД уже не идёт
+        assertThrows(QueryTimeoutException.class, () -> jdbc.queryForObject("SELECT 1", Integer.class));
+
+        deadlines.close(deadline, true);
+        QueryDeadlines.Stats stats = deadlines.stats();
+        assertEquals(1, stats.deadlineExceeded());
+        assertEquals(1, stats.cancelledStatements());
+        assertTrue(stats.wastedMillis() >= 200, "wasted: " + stats.wastedMillis());
+    }
+
+    @Test
+    void disconnectCancelsStatementsOfOtherThreads() throws Exception {
+        QueryDeadline deadline = deadlines.open(EndpointClass.SEARCH, null);
+        QueryDeadline.set(deadline);
+        // подзапрос в другом потоке, как у параллельной загрузки связей
+        Supplier<Long> query = QueryDeadline.propagate(() -> jdbc.queryForObject(ENDLESS, Long.class));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            try {
+                query.get();
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        worker.start();
+        Thread.sleep(200);
+
+        deadline.abort(QueryDeadline.Reason.DISCONNECT);
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertInstanceOf(QueryTimeoutException.class, failure.get());
+
+        deadlines.close(deadline, true);
+        assertEquals(1, deadlines.stats().disconnected());
+        assertEquals(0, deadlines.stats().deadlineExceeded());
+    }
+
+    @Test
+    void failedStatementsLeaveDeadline() throws Exception {
+        QueryDeadline deadline = deadlines.open(EndpointClass.READ, null);
+        QueryDeadline.set(deadline);
+
+        // ошибка БД и исключение из RowMapper
+        assertThrows(DataAccessException.class, () -> jdbc.queryForObject("SELECT * FROM missing", Integer.class));
+        assertThrows(IllegalStateException.class, () -> jdbc.query("SELECT 1", (rs, rowNum) -> {
+            throw new IllegalStateException("mapper");
+        }));
+        long dbNanos = deadline.dbNanos();
+        Thread.sleep(100);
+        assertEquals(dbNanos, deadline.dbNanos());
+
+        deadline.abort(QueryDeadline.Reason.DISCONNECT);
+        assertEquals(0, deadline.cancelledStatements());
+        deadlines.close(deadline, false);
+    }
+
+    @Test
+    void clientCanOnlyShortenDeadline() {
+        QueryDeadline shortened = deadlines.open(EndpointClass.SEARCH, "50");
+        assertTrue(shortened.remainingNanos() <= Duration.ofMillis(50).toNanos());
+        QueryDeadline capped = deadlines.open(EndpointClass.READ, "60000");
+        assertTrue(capped.remainingNanos() <= Duration.ofMillis(300).toNanos());
+        deadlines.close(shortened, false);
+        deadlines.close(capped, false);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Бюджет SQL на один вызов хранилища или сервиса: сколько операторов он выполняет и сколько строк
+// читает на засеянных данных. Строки считаются, только если включено filmorate.sql-trace.count-rows.
+// Бюджеты - текущие значения: когда оптимизация их снижает, бюджет снижается вместе с ней,
+// а рост (например, вернувшийся запрос на каждую строку) роняет сборку.
+public final class QueryBudget {
+    private final String name;
+    private final int maxStatements;
+    private final long maxRows;
+
+    private QueryBudget(String name, int maxStatements, long maxRows) {
+        this.name = name;
+        this.maxStatements = maxStatements;
+        this.maxRows = maxRows;
+    }
+
+    public static QueryBudget of(String name, int maxStatements, long maxRows) {
+        return new QueryBudget(name, maxStatements, maxRows);
+    }
+
+    public <T> T check(Supplier<T> call) {
+        Object[] result = new Object[1];
+        SqlTrace trace = SqlTrace.record(() -> result[0] = call.get());
+        if (trace.getStatements() > maxStatements || trace.getRows() > maxRows) {
+            fail(String.format("%s: %d операторов (бюджет %d), %d строк (бюджет %d)%n%s", name,
+                    trace.getStatements(), maxStatements, trace.getRows(), maxRows, describe(trace.repeats())));
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    public void check(Runnable call) {
+        check(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private static String describe(Map<String, Integer> repeats) {
+        return repeats.entrySet().stream()
+                .map(entry -> "  " + entry.getValue() + " × " + entry.getKey())
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.zalando.logbook.HttpRequest;
+
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestLoggingSamplerTest {
+
+    @Test
+    void sampleRateControlsShareOfLoggedRequests() {
+        RequestLoggingSampler sampler = new RequestLoggingSampler(true, 0.25);
+        long logged = IntStream.range(0, 20_000).filter(i -> sampler.shouldLog()).count();
+        assertTrue(logged > 4_500 && logged < 5_500, "logged: " + logged);
+
+        sampler.update(null, 0.0);
+        assertFalse(sampler.shouldLog());
+        sampler.update(null, 5.0);
+        assertEquals(1.0, sampler.getSampleRate());
+        assertTrue(sampler.shouldLog());
+        sampler.update(false, null);
+        assertFalse(sampler.shouldLog());
+    }
+
+    // условие Logbook спрашивает семплер на каждый запрос, поэтому выключение действует сразу
+    @Test
+    void conditionFollowsSampler() {
+        RequestLoggingSampler sampler = new RequestLoggingSampler(true, 1.0);
+        Predicate<HttpRequest> condition = new RequestLoggingConfiguration().requestCondition(sampler);
+        assertTrue(condition.test(null));
+
+        RequestLoggingController controller = new RequestLoggingController(sampler);
+        assertEquals(Map.of("enabled", false, "sampleRate", 1.0), controller.update(false, null));
+        assertFalse(condition.test(null));
+        assertEquals(Map.of("enabled", true, "sampleRate", 0.5), controller.update(true, 0.5));
+    }
+
+    @Test
+    void adminChangesNeedTokenOrLoopback() throws Exception {
+        AdminAccessFilter open = new AdminAccessFilter("");
+        assertEquals(200, put(open, "127.0.0.1", null));
+        assertEquals(403, put(open, "10.0.0.7", null));
+
+        AdminAccessFilter guarded = new AdminAccessFilter("secret");
+        assertEquals(403, put(guarded, "127.0.0.1", null));
+        assertEquals(403, put(guarded, "10.0.0.7", "wrong"));
+        assertEquals(200, put(guarded, "10.0.0.7", "secret"));
+        // закодированные и лишние символы в пути Spring раскодирует и сопоставит с /admin
+        assertEquals(403, put(guarded, "/%61dmin/sql-trace", "10.0.0.7", null));
+        assertEquals(403, put(guarded, "//admin;x=1/sql-trace", "10.0.0.7", null));
+
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/admin/request-logging");
+        read.setRemoteAddr("10.0.0.7");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        guarded.doFilter(read, response, new MockFilterChain());
+        assertEquals(200, response.getStatus());
+    }
+
+    private static int put(AdminAccessFilter filter, String address, String token) throws Exception {
+        return put(filter, "/admin/request-logging", address, token);
+    }
+
+    private static int put(AdminAccessFilter filter, String path, String address, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", path);
+        request.setRemoteAddr(address);
+        if (token != null) {
+            request.addHeader(AdminAccessFilter.TOKEN_HEADER, token);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.logging;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlTraceFilterTest {
+    private EmbeddedDatabase dataSource;
+    private SqlTracing tracing;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("sql-trace-" + UUID.randomUUID())
+                .build();
+        tracing = new SqlTracing(true, true, 5, true);
+        jdbc = new JdbcTemplate(tracing.wrap(dataSource));
+        jdbc.execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(20))");
+        for (int i = 1; i <= 10; i++) {
+            jdbc.update("INSERT INTO items VALUES (?, ?)", i, "item" + i);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void perRowQueriesAreCountedAndReported() throws Exception {
+        MockHttpServletResponse response = get(() -> {
+            List<Integer> ids = jdbc.queryForList("SELECT id FROM items ORDER BY id", Integer.class);
+            // запрос на каждую строку
+            ids.forEach(id -> jdbc.queryForObject("SELECT name FROM items WHERE id = ?", String.class, id));
+            return String.valueOf(ids.size());
+        });
+
+        assertEquals("10", response.getContentAsString());
+        assertEquals("11", response.getHeader(SqlTraceFilter.STATEMENTS_HEADER));
+        assertEquals("20", response.getHeader(SqlTraceFilter.ROWS_HEADER));
+        assertEquals("2", response.getHeader(SqlTraceFilter.TEMPLATES_HEADER));
+        assertEquals("10", response.getHeader(SqlTraceFilter.MAX_REPEATS_HEADER));
+        assertEquals("SELECT name FROM items WHERE id = ?", response.getHeader(SqlTraceFilter.REPEATED_HEADER));
+        assertNotNull(response.getHeader(SqlTraceFilter.TIME_HEADER));
+        assertEquals(1, tracing.stats().warnings());
+    }
+
+    @Test
+    void batchedLoadIsOneTemplateAndNotWarned() throws Exception {
+        MockHttpServletResponse response = get(() -> {
+            // пачки разной длины - один шаблон
+            jdbc.queryForList("SELECT name FROM items WHERE id IN (?, ?)", String.class, 1, 2);
+            jdbc.queryForList("SELECT name FROM items WHERE id IN (?,?,?)", String.class, 3, 4, 5);
+            return "ok";
+        });
+
+        assertEquals("2", response.getHeader(SqlTraceFilter.STATEMENTS_HEADER));
+        assertEquals("1", response.getHeader(SqlTraceFilter.TEMPLATES_HEADER));
+        assertEquals("SELECT name FROM items WHERE id IN (?...)", response.getHeader(SqlTraceFilter.REPEATED_HEADER));
+        assertEquals(0, tracing.stats().warnings());
+
+        // без режима заголовков ответ не буферизуется и заголовков нет
+        tracing.update(false, null);
+        assertNull(get(() -> jdbc.queryForObject("SELECT 1", String.class))
+                .getHeader(SqlTraceFilter.STATEMENTS_HEADER));
+        assertEquals(3, tracing.stats().statements());
+    }
+
+    private MockHttpServletResponse get(Handler handler) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/items");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.getWriter().write(handler.handle());
+            }
+        };
+        new SqlTraceFilter(tracing).doFilter(request, response, new MockFilterChain(servlet));
+        return response;
+    }
+
+    private interface Handler {
+        String handle();
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFields;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserFields;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Параллельная загрузка связей даёт те же фильмы и пользователей, что и последовательная.
+// Подзапросы идут на разных соединениях, поэтому данные коммитятся, а не живут в транзакции теста
+class HydrationExecutorTest {
+    private static final int FILMS = 30;
+    private static final int USERS = 20;
+    private static final int DIRECTORS = 3;
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbc;
+    private HydrationExecutor parallel;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("hydration-" + UUID.randomUUID())
+                .build();
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+        Random random = new Random(5);
+        for (int i = 1; i <= DIRECTORS; i++) {
+            jdbc.update("INSERT INTO directors (name) VALUES (?)", "Director " + i);
+        }
+        for (int i = 1; i <= USERS; i++) {
+            jdbc.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                    "u" + i + "@mail.ru", "u" + i, "u" + i, LocalDate.of(1990, 1, 1));
+        }
+        for (int i = 1; i <= FILMS; i++) {
+            jdbc.update("INSERT INTO films (name, description, release_date, duration, mpa_rating_id) "
+                    + "VALUES (?, ?, ?, ?, ?)", "Film " + i, "description", LocalDate.of(2000, 1, i), 100, 1 + i % 5);
+            jdbc.update("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", i, 1 + i % 6);
+            jdbc.update("INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", i, 1 + i % DIRECTORS);
+        }
+        for (int user = 1; user <= USERS; user++) {
+            for (int film : random.ints(1, FILMS + 1).distinct().limit(5).toArray()) {
+                jdbc.update("INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", film, user);
+            }
+            jdbc.update("INSERT INTO friendships (user_id, friend_id) VALUES (?, ?)", user, 1 + user % USERS);
+        }
+        parallel = HydrationExecutor.parallel();
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallel.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void parallelHydrationMatchesSequential() {
+        List<Integer> filmIds = IntStream.rangeClosed(1, FILMS).boxed().toList();
+        List<Integer> userIds = IntStream.rangeClosed(1, USERS).boxed().toList();
+
+        List<Film> expectedFilms = films(HydrationExecutor.sequential()).getFilmsByIds(filmIds, FilmFields.FULL);
+        List<Film> actualFilms = films(parallel).getFilmsByIds(filmIds, FilmFields.FULL);
+        assertEquals(FILMS, actualFilms.size());
+        assertEquals(expectedFilms, actualFilms);
+        assertTrue(actualFilms.stream().allMatch(film -> !film.getGenres().isEmpty()
+                && !film.getDirectors().isEmpty()));
+
+        List<User> expectedUsers = users(HydrationExecutor.sequential()).getUsersByIds(userIds, UserFields.FULL);
+        List<User> actualUsers = users(parallel).getUsersByIds(userIds, UserFields.FULL);
+        assertEquals(expectedUsers, actualUsers);
+        assertTrue(actualUsers.stream().allMatch(user -> user.getFriends().size() == 1));
+    }
+
+    @Test
+    void forkRunsOnAnotherThreadAndRethrowsCause() {
+        assertTrue(parallel.isParallel());
+        Supplier<Boolean> virtual = parallel.fork(() -> Thread.currentThread().isVirtual());
+        assertTrue(virtual.get());
+
+        Supplier<Object> failed = parallel.fork(() -> {
+            throw new IllegalStateException("boom");
+        });
+        assertEquals("boom", assertThrows(IllegalStateException.class, failed::get).getMessage());
+    }
+
+    private FilmDbStorage films(HydrationExecutor hydration) {
+        return new FilmDbStorage(jdbc, hydration, new CatalogVersions(), PopularityIndex.disabled(),
+                TrendingIndex.detached());
+    }
+
+    private UserDbStorage users(HydrationExecutor hydration) {
+        return new UserDbStorage(jdbc, hydration, new CatalogVersions(), PopularityIndex.disabled(),
+                TrendingIndex.detached());
+    }
+}
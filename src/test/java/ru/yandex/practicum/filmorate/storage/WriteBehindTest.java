@@ -0,0 +1,228 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.logging.SqlTrace;
+import ru.yandex.practicum.filmorate.logging.SqlTracing;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.PendingLikes;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Отложенная запись: чтения сразу видят изменения, а после сброса БД и рейтинги совпадают с прямой записью
+class WriteBehindTest {
+    private static final int FILMS = 20;
+    private static final int USERS = 15;
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbc;
+    private PopularityIndex index;
+    private PendingLikes pendingLikes;
+    private FilmDbStorage films;
+    private UserDbStorage users;
+    private FilmDbStorage plainFilms;
+    private final Random random = new Random(11);
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("write-behind-" + UUID.randomUUID())
+                .build();
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbc = new JdbcTemplate(new SqlTracing(true, false, 10, false).wrap(dataSource));
+        for (int i = 1; i <= USERS; i++) {
+            jdbc.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                    "u" + i + "@mail.ru", "u" + i, "u" + i, LocalDate.of(1990, 1, 1));
+        }
+        for (int i = 1; i <= FILMS; i++) {
+            jdbc.update("INSERT INTO films (name, description, release_date, duration, mpa_rating_id) "
+                    + "VALUES (?, ?, ?, ?, ?)", "Film " + i, "description", LocalDate.of(2000, 1, i), 100, 1);
+        }
+
+        WriteBehind writeBehind = WriteBehind.manual(1_000_000);
+        index = new PopularityIndex(jdbc, true);
+        index.rebuild();
+        TrendingIndex trending = TrendingIndex.detached();
+        CatalogVersions versions = new CatalogVersions();
+        pendingLikes = new PendingLikes(jdbc, writeBehind, index, trending, versions);
+        films = new FilmDbStorage(jdbc, HydrationExecutor.sequential(), versions, index, trending, pendingLikes);
+        users = new UserDbStorage(jdbc, HydrationExecutor.sequential(), versions, index, trending, writeBehind,
+                pendingLikes);
+        plainFilms = new FilmDbStorage(jdbc);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void oppositeOperationsCancelAndRepeatsCoalesce() {
+        films.addLike(1, 1);
+        films.addLike(1, 1);
+        films.addLike(2, 1);
+        films.removeLike(2, 1);
+        users.addFriend(1, 2);
+        users.removeFriend(1, 2);
+
+        assertEquals(Set.of(1), films.getFilmById(1).getLikes());
+        assertEquals(Set.of(), films.getFilmById(2).getLikes());
+        assertEquals(0, count("film_likes"));
+
+        pendingLikes.flush();
+        users.flushPendingWrites();
+        assertEquals(1, count("film_likes"));
+        assertEquals(0, count("friendships"));
+
+        // снятие и возврат уже записанного лайка ничего не пишет: при сбросе только чтение состояния
+        films.removeLike(1, 1);
+        films.addLike(1, 1);
+        SqlTrace flushed = SqlTrace.record(pendingLikes::flush);
+        assertEquals(1, flushed.getStatements(), flushed.repeats().toString());
+        assertEquals(1, count("film_likes"));
+    }
+
+    @Test
+    void readsSeePendingWritesAndFlushMatchesDirectWrites() {
+        Map<Integer, Set<Integer>> likes = new HashMap<>();
+        Map<Integer, Set<Integer>> friends = new HashMap<>();
+        for (int step = 0; step < 600; step++) {
+            int filmId = 1 + random.nextInt(FILMS);
+            int userId = 1 + random.nextInt(USERS);
+            int otherId = 1 + random.nextInt(USERS);
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    films.addLike(filmId, userId);
+                    likes.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
+                }
+                case 1 -> {
+                    films.removeLike(filmId, userId);
+                    likes.getOrDefault(filmId, new HashSet<>()).remove(userId);
+                }
+                case 2 -> {
+                    users.addFriend(userId, otherId);
+                    friends.computeIfAbsent(userId, k -> new HashSet<>()).add(otherId);
+                }
+                default -> {
+                    users.removeFriend(userId, otherId);
+                    friends.getOrDefault(userId, new HashSet<>()).remove(otherId);
+                }
+            }
+            if (step % 150 == 149) {
+                pendingLikes.flush();
+                users.flushPendingWrites();
+            }
+        }
+
+        for (Film film : films.getAllFilms()) {
+            assertEquals(likes.getOrDefault(film.getId(), Set.of()), film.getLikes(), "film " + film.getId());
+        }
+        for (User user : users.getAllUsers()) {
+            assertEquals(friends.getOrDefault(user.getId(), Set.of()), user.getFriends(), "user " + user.getId());
+        }
+        Set<Integer> common = new HashSet<>(friends.getOrDefault(1, Set.of()));
+        common.retainAll(friends.getOrDefault(2, Set.of()));
+        assertEquals(common, ids(users.getCommonFriends(1, 2)));
+
+        // рейтинг из индекса меняется при сбросе, вместе с film_likes
+        pendingLikes.flush();
+        users.flushPendingWrites();
+        assertIterableEquals(filmIds(plainFilms.getPopularFilms(FILMS, null, null)),
+                filmIds(films.getPopularFilms(FILMS, null, null)));
+        assertEquals(likes.values().stream().mapToInt(Set::size).sum(), count("film_likes"));
+        assertEquals(friends.values().stream().mapToInt(Set::size).sum(), count("friendships"));
+    }
+
+    @Test
+    void deletingUserDropsPendingLikesWithoutDoubleCounting() {
+        films.addLike(1, 1);
+        films.addLike(1, 2);
+        films.addLike(2, 1);
+        pendingLikes.flush();
+        films.removeLike(1, 1);
+        films.addLike(3, 1);
+        users.addFriend(2, 1);
+
+        users.deleteUser(1);
+        pendingLikes.flush();
+        users.flushPendingWrites();
+
+        assertEquals(1, count("film_likes"));
+        assertEquals(0, count("friendships"));
+        assertIterableEquals(filmIds(plainFilms.getPopularFilms(FILMS, null, null)),
+                filmIds(films.getPopularFilms(FILMS, null, null)));
+        assertEquals(1, films.getPopularFilms(1, null, null).get(0).getId());
+    }
+
+    @Test
+    void rejectedWritesStayOutOfIndex() {
+        films.addLike(5, 1);
+        // фильм пропал в обход хранилища: MERGE не проходит по внешнему ключу
+        jdbc.update("DELETE FROM films WHERE id = 5");
+        films.addLike(4, 1);
+        pendingLikes.flush();
+
+        assertEquals(1, count("film_likes"));
+        assertEquals(4, films.getPopularFilms(1, null, null).get(0).getId());
+    }
+
+    @Test
+    void operationsAreRecordedWithoutQueriesAndFlushReadsStateOnce() {
+        films.addLike(1, 1);
+        pendingLikes.flush();
+
+        SqlTrace recorded = SqlTrace.record(() -> {
+            for (int userId = 1; userId <= USERS; userId++) {
+                films.addLike(2, userId);
+            }
+            // возврат снятого лайка, который уже есть в БД
+            films.removeLike(1, 1);
+            films.addLike(1, 1);
+            users.addFriend(1, 2);
+        });
+        assertEquals(0, recorded.getStatements(), recorded.repeats().toString());
+
+        SqlTrace flushed = SqlTrace.record(() -> {
+            pendingLikes.flush();
+            users.flushPendingWrites();
+        });
+        // на каждый буфер - один запрос состояния и одна пачка MERGE
+        assertEquals(4, flushed.getStatements(), flushed.repeats().toString());
+        assertEquals(USERS + 1, count("film_likes"));
+        assertEquals(1, count("friendships"));
+        assertEquals(2, films.getPopularFilms(1, null, null).get(0).getId());
+        assertEquals(Set.of(1), films.getFilmById(1).getLikes());
+    }
+
+    private int count(String table) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static List<Integer> filmIds(List<Film> list) {
+        return list.stream().map(Film::getId).toList();
+    }
+
+    private static Set<Integer> ids(List<User> list) {
+        Set<Integer> result = new HashSet<>();
+        list.forEach(user -> result.add(user.getId()));
+        return result;
+    }
+}
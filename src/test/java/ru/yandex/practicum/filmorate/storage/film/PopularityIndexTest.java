@@ -0,0 +1,162 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.cache.CatalogVersions;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.DAO.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.HydrationExecutor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Рейтинг из индекса должен совпадать с рейтингом, посчитанным запросом, после любых изменений
+class PopularityIndexTest {
+    private static final int FILMS = 40;
+    private static final int USERS = 30;
+    private static final int DIRECTORS = 4;
+
+    private EmbeddedDatabase dataSource;
+    private PopularityIndex index;
+    private FilmDbStorage indexed;
+    private FilmDbStorage plain;
+    private DirectorDbStorage directors;
+    private final Random random = new Random(7);
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("popularity-" + UUID.randomUUID())
+                .build();
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        for (int i = 1; i <= USERS; i++) {
+            jdbc.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                    "u" + i + "@mail.ru", "u" + i, "u" + i, LocalDate.of(1990, 1, 1));
+        }
+
+        for (int i = 1; i <= DIRECTORS; i++) {
+            jdbc.update("INSERT INTO directors (name) VALUES (?)", "Director " + i);
+        }
+
+        index = new PopularityIndex(jdbc, true);
+        index.rebuild();
+        indexed = new FilmDbStorage(jdbc, HydrationExecutor.sequential(), new CatalogVersions(), index,
+                TrendingIndex.detached());
+        plain = new FilmDbStorage(jdbc);
+        directors = new DirectorDbStorage(jdbc, new CatalogVersions(), index);
+        for (int i = 0; i < FILMS; i++) {
+            indexed.addFilm(film(i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void indexMatchesQueryAfterLikesAndFilmChanges() {
+        for (int step = 0; step < 500; step++) {
+            int filmId = 1 + random.nextInt(FILMS);
+            int userId = 1 + random.nextInt(USERS);
+            int action = random.nextInt(10);
+            if (action < 6) {
+                indexed.addLike(filmId, userId);
+            } else if (action < 9) {
+                indexed.removeLike(filmId, userId);
+            } else if (indexed.getFilmById(filmId) != null) {
+                Film film = film(random.nextInt(FILMS));
+                film.setId(filmId);
+                indexed.updateFilm(film);
+            }
+        }
+        assertSameRanking();
+
+        indexed.deleteFilm(3);
+        assertSameRanking();
+
+        directors.delete(2);
+        assertSameRanking();
+    }
+
+    @Test
+    void rebuildPicksUpChangesMadeAroundStorage() {
+        new JdbcTemplate(dataSource).update("INSERT INTO film_likes (film_id, user_id) VALUES (5, 1)");
+        assertNotEquals(5, indexed.getPopularFilms(1, null, null).get(0).getId());
+
+        index.rebuild();
+        assertEquals(5, indexed.getPopularFilms(1, null, null).get(0).getId());
+        assertSameRanking();
+    }
+
+    private void assertSameRanking() {
+        assertIterableEquals(ids(plain.getPopularFilms(FILMS, null, null)),
+                ids(indexed.getPopularFilms(FILMS, null, null)));
+        for (int genreId = 1; genreId <= 6; genreId++) {
+            for (int year = 2000; year < 2004; year++) {
+                assertIterableEquals(ids(plain.getPopularFilms(5, genreId, year)),
+                        ids(indexed.getPopularFilms(5, genreId, year)), "genre " + genreId + ", year " + year);
+            }
+            assertIterableEquals(ids(plain.getPopularFilms(5, genreId, null)),
+                    ids(indexed.getPopularFilms(5, genreId, null)));
+        }
+        assertIterableEquals(ids(plain.getPopularFilms(5, null, 2001)),
+                ids(indexed.getPopularFilms(5, null, 2001)));
+        for (int directorId = 1; directorId <= DIRECTORS; directorId++) {
+            for (String sortBy : List.of("likes", "year")) {
+                assertIterableEquals(ids(plain.getFilmsByDirectorSorted(directorId, sortBy)),
+                        ids(indexed.getFilmsByDirectorSorted(directorId, sortBy)),
+                        "director " + directorId + ", " + sortBy);
+            }
+        }
+    }
+
+    private Film film(int seed) {
+        Film film = new Film();
+        film.setName("Film " + seed);
+        film.setDescription("description");
+        film.setReleaseDate(LocalDate.of(2000 + seed % 4, 1 + seed % 12, 1));
+        film.setDuration(100);
+        Mpa mpa = new Mpa();
+        mpa.setId(1);
+        film.setMpa(mpa);
+        List<Genre> genres = new ArrayList<>();
+        for (int genreId = 1 + seed % 3; genreId <= 6; genreId += 1 + seed % 4) {
+            Genre genre = new Genre();
+            genre.setId(genreId);
+            genres.add(genre);
+        }
+        film.setGenres(genres);
+        Set<Director> filmDirectors = new HashSet<>();
+        for (int directorId = 1 + seed % DIRECTORS; directorId <= DIRECTORS; directorId += 2) {
+            Director director = new Director();
+            director.setId(directorId);
+            filmDirectors.add(director);
+        }
+        film.setDirectors(filmDirectors);
+        return film;
+    }
+
+    private static List<Integer> ids(List<Film> films) {
+        return films.stream().map(Film::getId).toList();
+    }
+}
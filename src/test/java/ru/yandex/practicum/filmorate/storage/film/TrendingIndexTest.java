@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrendingIndexTest {
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private MutableClock clock;
+    private TrendingIndex trending;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(START);
+        trending = new TrendingIndex(null, Duration.ofDays(1), Duration.ofMinutes(1), clock);
+    }
+
+    @Test
+    void likeWeightHalvesEveryHalfLife() {
+        trending.likeAdded(1, clock.instant());
+        assertEquals(1.0, trending.score(1), 1e-9);
+
+        clock.advance(Duration.ofDays(1));
+        assertEquals(0.5, trending.score(1), 1e-9);
+
+        trending.sweep();
+        clock.advance(Duration.ofDays(1));
+        assertEquals(0.25, trending.score(1), 1e-9);
+    }
+
+    @Test
+    void freshLikesOutrankOldOnes() {
+        for (int user = 0; user < 3; user++) {
+            trending.likeAdded(1, clock.instant());
+        }
+        clock.advance(Duration.ofDays(3));
+        trending.likeAdded(2, clock.instant());
+        trending.likeAdded(2, clock.instant());
+
+        // 3 лайка трёхдневной давности весят 3/8, 2 свежих — 2
+        assertEquals(List.of(2, 1), trending.topFilmIds(10));
+        assertEquals(List.of(2), trending.topFilmIds(1));
+    }
+
+    @Test
+    void removingLikeSubtractsItsOriginalWeight() {
+        Instant likedAt = clock.instant();
+        trending.likeAdded(1, likedAt);
+        trending.likeAdded(1, likedAt);
+        clock.advance(Duration.ofHours(12));
+        trending.sweep();
+
+        trending.likeRemoved(1, likedAt);
+        assertEquals(Math.pow(0.5, 0.5), trending.score(1), 1e-9);
+    }
+
+    @Test
+    void sweepDropsCooledFilms() {
+        trending.likeAdded(1, clock.instant());
+        trending.likeAdded(2, clock.instant());
+        trending.filmRemoved(2);
+        clock.advance(Duration.ofDays(10));
+        trending.sweep();
+
+        assertEquals(List.of(), trending.topFilmIds(10));
+        trending.likeAdded(1, clock.instant());
+        assertEquals(List.of(1), trending.topFilmIds(10));
+        assertEquals(1.0, trending.score(1), 1e-9);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}